@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmServiceBenchmark {
+
+    @Benchmark
+    public List<Film> getFilms(StorageFixture fixture) {
+        return fixture.filmService.getFilms();
+    }
+
+    @Benchmark
+    public List<Film> getFilmsPage(StorageFixture fixture) {
+        return fixture.filmService.getFilms(fixture.randomId(), 100);
+    }
+
+    @Benchmark
+    public Film getFilm(StorageFixture fixture) {
+        return fixture.filmService.getFilm(fixture.randomId());
+    }
+
+    @Benchmark
+    public List<Film> topByLikes(StorageFixture fixture) {
+        return fixture.filmService.topByLikes(10);
+    }
+
+    @Benchmark
+    public List<Film> topByLikesInGenreAndYear(StorageFixture fixture) {
+        return fixture.filmService.topByLikes(10, 1, 1950);
+    }
+
+    @Benchmark
+    public List<Film> search(StorageFixture fixture) {
+        return fixture.filmService.search("film" + fixture.randomId() / 100, List.of("title", "description"), 10);
+    }
+
+    @Benchmark
+    public Film likeAndDislike(StorageFixture fixture) {
+        long filmId = fixture.randomId();
+        fixture.filmService.like(filmId, fixture.idleUserId);
+        return fixture.filmService.dislike(filmId, fixture.idleUserId);
+    }
+}
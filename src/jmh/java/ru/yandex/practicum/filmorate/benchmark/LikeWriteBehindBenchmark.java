@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.LikeQueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LikeWriteBehindBenchmark {
+    private static final int BURST_SIZE = 1000;
+    private final AtomicLong likes = new AtomicLong();
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    private LikeQueue likeQueue;
+
+    @Setup(Level.Iteration)
+    public void setUp(StorageFixture fixture) {
+        if (writeBehind) {
+            likeQueue = new LikeQueue(fixture.filmStorage, new SimpleMeterRegistry(), 100_000, 1000, 200);
+            likeQueue.start();
+            fixture.filmService.setLikeQueue(likeQueue);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException {
+        if (likeQueue != null) {
+            likeQueue.close();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Film like(StorageFixture fixture) {
+        return nextLike(fixture);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int burst(StorageFixture fixture) {
+        int liked = 0;
+        for (int i = 0; i < BURST_SIZE; i++) {
+            liked += nextLike(fixture).getUsersLiked().size();
+        }
+        if (likeQueue != null) {
+            likeQueue.flush();
+        }
+        return liked;
+    }
+
+    private Film nextLike(StorageFixture fixture) {
+        long like = likes.getAndIncrement();
+        return fixture.filmService.like(1 + like % fixture.size, 1 + like / fixture.size % fixture.size);
+    }
+}
@@ -0,0 +1,146 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.concurrency.ConnectionLimiter;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmCache;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.UserCache;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RequestLoadBenchmark {
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int POOL_SIZE = 10;
+    private static final int SIZE = 1000;
+
+    @Param({"platform", "virtual", "virtual-unlimited"})
+    public String threads;
+
+    @Param({"200", "2000", "10000"})
+    public int concurrency;
+
+    @Param({"false", "true"})
+    public boolean parallelHydration;
+
+    private Server server;
+    private HikariDataSource dataSource;
+    private ExecutorService executor;
+    private FilmService filmService;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = Server.createTcpServer("-tcpPort", String.valueOf(port), "-ifNotExists").start();
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:tcp://localhost:" + port + "/mem:load-" + UUID.randomUUID()
+                + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        dataSource.setConnectionTimeout(TimeUnit.MINUTES.toMillis(1));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+
+        DataSource limited = dataSource;
+        if (threads.startsWith("virtual")) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            executor = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        }
+        if ("virtual".equals(threads)) {
+            limited = ConnectionLimiter.wrap(dataSource, ConnectionLimiter.defaultPermits(POOL_SIZE),
+                    TimeUnit.MINUTES.toMillis(1));
+        }
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(limited);
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        userService = new UserService(new UserDbStorage(jdbcTemplate), new UserCache(new SimpleMeterRegistry(), 1_000_000));
+        filmService = new FilmService(filmStorage, userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 1_000_000));
+        filmService.setParallelHydration(parallelHydration);
+        seed(filmStorage);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        dataSource.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public int requests() throws InterruptedException, ExecutionException {
+        List<Future<Integer>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(executor.submit(this::handleRequest));
+        }
+        int size = 0;
+        for (Future<Integer> response : responses) {
+            size += response.get();
+        }
+        return size;
+    }
+
+    private int handleRequest() {
+        long id = ThreadLocalRandom.current().nextLong(SIZE) + 1;
+        Film film = filmService.getFilm(id);
+        User user = userService.getUser(id);
+        return film.getUsersLiked().size() + user.getFriends().size();
+    }
+
+    private void seed(FilmDbStorage filmStorage) {
+        List<Film> films = new ArrayList<>(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            userService.createNewUser(User.builder()
+                    .login("user" + i)
+                    .email("user" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, 1))
+                    .build());
+            films.add(Film.builder()
+                    .name("film" + i)
+                    .description("description" + i)
+                    .releaseDate(LocalDate.of(2000, Month.JANUARY, 1))
+                    .duration(100)
+                    .build());
+        }
+        filmStorage.addNewFilms(films);
+        for (long userId = 1; userId <= SIZE; userId++) {
+            userService.addNewFriend(userId, userId % SIZE + 1);
+            filmService.like(userId, userId);
+        }
+    }
+}
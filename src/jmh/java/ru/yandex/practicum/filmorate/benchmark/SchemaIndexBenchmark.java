@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SchemaIndexBenchmark {
+    private static final int LIKES_PER_USER = 50;
+    private static final int FRIENDS_PER_USER = 20;
+    private static final List<String> REVERSE_INDEXES = List.of(
+            "likes_user_film", "friends_followed_following", "film_genres_genre_film");
+    private static final Map<String, String> QUERIES = Map.of(
+            "filmsLikedByUser", "SELECT film_id FROM likes WHERE user_id = ?",
+            "followersOfUser", "SELECT following_user_id FROM friends WHERE followed_user_id = ?",
+            "filmsInGenre", "SELECT film_id FROM film_genres WHERE genre_id = ? ORDER BY film_id LIMIT 100",
+            "filmLikeCount", "SELECT SUM(like_count) FROM film_like_counters WHERE film_id = ?");
+
+    @Param({"primary-keys", "reverse"})
+    public String indexes;
+
+    @Param({"1000000", "10000000"})
+    public int likes;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private int users;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:indexes-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        if ("primary-keys".equals(indexes)) {
+            REVERSE_INDEXES.forEach(index -> jdbcTemplate.execute("DROP INDEX IF EXISTS " + index));
+        }
+
+        users = likes / LIKES_PER_USER;
+        seed("INSERT INTO users (login, email, birthday) " +
+                "SELECT 'user' || X, 'user' || X || '@mail.ru', DATE '1990-01-01' FROM SYSTEM_RANGE(1, %d)", users);
+        seed("INSERT INTO films (name, description, releaseDate, duration) " +
+                "SELECT 'film' || X, 'description', DATE '2000-01-01', 120 FROM SYSTEM_RANGE(1, %d)", users);
+        seed("INSERT INTO film_genres (film_id, genre_id) " +
+                "SELECT X, MOD(X, 6) + 1 FROM SYSTEM_RANGE(1, %1$d) " +
+                "UNION ALL SELECT X, MOD(X + 3, 6) + 1 FROM SYSTEM_RANGE(1, %1$d)", users);
+        seed("INSERT INTO likes (film_id, user_id) " +
+                        "SELECT MOD((X / %1$d) * 7919 + MOD(X, %1$d) * %2$d, %3$d) + 1, X / %1$d + 1 " +
+                        "FROM SYSTEM_RANGE(0, %4$d)",
+                LIKES_PER_USER, users / LIKES_PER_USER, users, likes - 1);
+        seed("INSERT INTO friends (following_user_id, followed_user_id) " +
+                        "SELECT X / %1$d + 1, MOD((X / %1$d) * 7919 + MOD(X, %1$d) * %2$d + 1, %3$d) + 1 " +
+                        "FROM SYSTEM_RANGE(0, %4$d)",
+                FRIENDS_PER_USER, users / FRIENDS_PER_USER, users, users * FRIENDS_PER_USER - 1);
+        jdbcTemplate.update("INSERT INTO film_like_counters (film_id, stripe, like_count) " +
+                "SELECT film_id, MOD(user_id, 8), COUNT(*) FROM likes GROUP BY film_id, MOD(user_id, 8)");
+        jdbcTemplate.execute("ANALYZE");
+
+        QUERIES.forEach((name, query) -> {
+            String plan = jdbcTemplate.queryForObject("EXPLAIN " + query.replace("?", "1"), String.class);
+            System.out.printf("%n[%s, %s] %s%n", indexes, name, plan.replaceAll("\\s+", " "));
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public List<Long> filmsLikedByUser() {
+        return jdbcTemplate.queryForList(QUERIES.get("filmsLikedByUser"), Long.class, randomId(users));
+    }
+
+    @Benchmark
+    public List<Long> followersOfUser() {
+        return jdbcTemplate.queryForList(QUERIES.get("followersOfUser"), Long.class, randomId(users));
+    }
+
+    @Benchmark
+    public List<Long> filmsInGenre() {
+        return jdbcTemplate.queryForList(QUERIES.get("filmsInGenre"), Long.class, randomId(6));
+    }
+
+    @Benchmark
+    public Long filmLikeCount() {
+        return jdbcTemplate.queryForObject(QUERIES.get("filmLikeCount"), Long.class, randomId(users));
+    }
+
+    private void seed(String query, Object... args) {
+        jdbcTemplate.update(String.format(query, args));
+    }
+
+    private long randomId(int bound) {
+        return ThreadLocalRandom.current().nextLong(bound) + 1;
+    }
+}
@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmCache;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.UserCache;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.*;
+
+@State(Scope.Benchmark)
+public class StorageFixture {
+    private static final int CHUNK_SIZE = 1000;
+    private static final int FRIENDS_PER_USER = 10;
+    private static final int LIKES_PER_USER = 5;
+    private static final LocalDate BIRTHDAY = LocalDate.of(1990, Month.JANUARY, 1);
+
+    @Param({"memory", "db"})
+    public String storage;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    public FilmService filmService;
+    public FilmStorage filmStorage;
+    public UserService userService;
+    public long idleUserId;
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:benchmark-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        UserStorage userStorage;
+        if ("db".equals(storage)) {
+            seedDatabase(jdbcTemplate);
+            userStorage = new UserDbStorage(jdbcTemplate);
+            filmStorage = new FilmDbStorage(jdbcTemplate);
+        } else {
+            InMemoryUserStorage inMemoryUsers = new InMemoryUserStorage();
+            InMemoryFilmStorage inMemoryFilms = new InMemoryFilmStorage(inMemoryUsers);
+            seedMemory(inMemoryUsers, inMemoryFilms);
+            userStorage = inMemoryUsers;
+            filmStorage = inMemoryFilms;
+        }
+
+        userService = new UserService(userStorage, new UserCache(new SimpleMeterRegistry(), 1_000_000));
+        filmService = new FilmService(filmStorage, userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 1_000_000));
+        idleUserId = userService.createNewUser(user(size)).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    public long randomId() {
+        return 1 + (long) (Math.random() * size);
+    }
+
+    private void seedDatabase(JdbcTemplate jdbcTemplate) {
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            List<Object[]> users = new ArrayList<>(CHUNK_SIZE);
+            for (int i = from; i < Math.min(from + CHUNK_SIZE, size); i++) {
+                User user = user(i);
+                users.add(new Object[]{user.getLogin(), user.getName(), user.getEmail(), Date.valueOf(BIRTHDAY)});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO users (login, name, email, birthday) VALUES (?, ?, ?, ?);", users);
+        }
+
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            List<Film> films = new ArrayList<>(CHUNK_SIZE);
+            for (int i = from; i < Math.min(from + CHUNK_SIZE, size); i++) {
+                films.add(film(i));
+            }
+            filmStorage.addNewFilms(films);
+        }
+
+        Random random = new Random(42);
+        List<Object[]> friends = new ArrayList<>(CHUNK_SIZE);
+        List<Object[]> likes = new ArrayList<>(CHUNK_SIZE);
+        for (long userId = 1; userId <= size; userId++) {
+            for (long friendId : pick(random, userId, FRIENDS_PER_USER, false)) {
+                friends.add(new Object[]{userId, friendId});
+            }
+            for (long filmId : pick(random, userId, LIKES_PER_USER, true)) {
+                likes.add(new Object[]{filmId, userId});
+            }
+            if (friends.size() >= CHUNK_SIZE || userId == size) {
+                jdbcTemplate.batchUpdate("INSERT INTO friends (following_user_id, followed_user_id) VALUES (?, ?);",
+                        friends);
+                jdbcTemplate.batchUpdate("INSERT INTO likes (film_id, user_id) VALUES (?, ?);", likes);
+                friends.clear();
+                likes.clear();
+            }
+        }
+        jdbcTemplate.update("UPDATE film_like_counters AS c SET like_count = (SELECT COUNT(*) FROM likes AS l " +
+                "WHERE l.film_id = c.film_id AND MOD(l.user_id, 8) = c.stripe);");
+    }
+
+    private void seedMemory(InMemoryUserStorage userStorage, InMemoryFilmStorage filmStorage) {
+        for (int i = 0; i < size; i++) {
+            userStorage.createNewUser(user(i));
+            filmStorage.addNewFilm(film(i));
+        }
+
+        Random random = new Random(42);
+        for (long userId = 1; userId <= size; userId++) {
+            for (long friendId : pick(random, userId, FRIENDS_PER_USER, false)) {
+                userStorage.addNewFriend(userId, friendId);
+            }
+            for (long filmId : pick(random, userId, LIKES_PER_USER, true)) {
+                filmStorage.like(filmId, userId);
+            }
+        }
+    }
+
+    private Set<Long> pick(Random random, long self, int count, boolean skewed) {
+        Set<Long> ids = new HashSet<>();
+        int limit = Math.min(count, size - 1);
+        while (ids.size() < limit) {
+            double position = skewed ? Math.pow(random.nextDouble(), 3) : random.nextDouble();
+            long id = 1 + (long) (position * size);
+            if (skewed || id != self) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private User user(int index) {
+        return User.builder()
+                .login("user" + index)
+                .name("user" + index)
+                .email("user" + index + "@mail.ru")
+                .birthday(BIRTHDAY)
+                .build();
+    }
+
+    private Film film(int index) {
+        Film film = Film.builder()
+                .name("film" + index)
+                .description("description" + index)
+                .releaseDate(LocalDate.of(1950 + index % 70, Month.JANUARY, 1))
+                .duration(90 + index % 60)
+                .build();
+        film.getGenres().add(Genre.builder().id(1 + index % 6).build());
+        return film;
+    }
+}
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    @Benchmark
+    public List<User> getUsers(StorageFixture fixture) {
+        return fixture.userService.getUsers();
+    }
+
+    @Benchmark
+    public List<User> getUsersPage(StorageFixture fixture) {
+        return fixture.userService.getUsers(fixture.randomId(), 100);
+    }
+
+    @Benchmark
+    public User getUser(StorageFixture fixture) {
+        return fixture.userService.getUser(fixture.randomId());
+    }
+
+    @Benchmark
+    public List<User> getUserFriends(StorageFixture fixture) {
+        return fixture.userService.getUserFriends(fixture.randomId());
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends(StorageFixture fixture) {
+        return fixture.userService.getCommonFriends(fixture.randomId(), fixture.randomId());
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.concurrency;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class ConnectionLimiter {
+
+    private ConnectionLimiter() {
+    }
+
+    public static int defaultPermits(int poolSize) {
+        return Math.min(poolSize, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public static DataSource wrap(DataSource dataSource, int permits, long timeoutMillis) {
+        Semaphore semaphore = new Semaphore(permits, true);
+        return (DataSource) Proxy.newProxyInstance(ConnectionLimiter.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("getConnection")) {
+                        return invoke(dataSource, method, args);
+                    }
+                    acquire(semaphore, timeoutMillis);
+                    try {
+                        return releasing((Connection) invoke(dataSource, method, args), semaphore);
+                    } catch (Throwable e) {
+                        semaphore.release();
+                        throw e;
+                    }
+                });
+    }
+
+    private static void acquire(Semaphore semaphore, long timeoutMillis) throws SQLException {
+        try {
+            if (!semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Превышено время ожидания соединения с базой данных");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Ожидание соединения с базой данных прервано", e);
+        }
+    }
+
+    private static Connection releasing(Connection connection, Semaphore semaphore) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ConnectionLimiter.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("close")) {
+                        return invoke(connection, method, args);
+                    }
+                    try {
+                        return invoke(connection, method, args);
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            semaphore.release();
+                        }
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
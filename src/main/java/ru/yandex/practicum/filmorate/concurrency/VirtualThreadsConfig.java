@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.concurrency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean
+    public static BeanPostProcessor connectionLimitingDataSource(Environment environment) {
+        int poolSize = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+        int permits = environment.getProperty("filmorate.jdbc.max-concurrency", Integer.class,
+                ConnectionLimiter.defaultPermits(poolSize));
+        long timeout = environment.getProperty("spring.datasource.hikari.connection-timeout", Long.class, 30000L);
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                log.info("Виртуальные потоки включены, одновременных обращений к БД не более {}", permits);
+                return ConnectionLimiter.wrap(dataSource, permits, timeout);
+            }
+        };
+    }
+}
@@ -1,23 +1,43 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
 public class FilmController {
     private final FilmService filmService;
+    private final FilmImportService filmImportService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/films")
     public Film addNewFilm(@Valid @RequestBody Film film) {
         return filmService.addNewFilm(film);
     }
 
+    @PostMapping(value = "/films/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<FilmImportResult> addNewFilms(@RequestBody List<Film> films) {
+        return filmImportService.addNewFilms(films);
+    }
+
+    @PostMapping(value = "/films/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<FilmImportResult> addNewFilms(InputStream body) throws IOException {
+        return filmImportService.addNewFilms(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+    }
+
     @PutMapping("/films")
     public Film updateFilm(@Valid @RequestBody Film film) {
         return filmService.updateFilm(film);
@@ -29,13 +49,40 @@ public class FilmController {
     }
 
     @GetMapping("/films")
-    public List<Film> getFilms() {
-        return filmService.getFilms();
+    public List<Film> getFilms(@RequestParam(required = false) Long after,
+                               @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return filmService.getFilms();
+        }
+        return filmService.getFilms(after, limit);
+    }
+
+    @GetMapping("/films/stream")
+    public ResponseEntity<StreamingResponseBody> streamFilms() {
+        StreamingResponseBody body = out -> filmService.forEachFilm(film -> writeLine(out, film));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/films/popular")
-    public List<Film> topByLikes(@RequestParam(defaultValue = "10") int count) {
-        return filmService.topByLikes(count);
+    public List<Film> topByLikes(@RequestParam(defaultValue = "10") int count,
+                                 @RequestParam(required = false) Integer genreId,
+                                 @RequestParam(required = false) Integer year) {
+        return filmService.topByLikes(count, genreId, year);
+    }
+
+    @GetMapping("/films/search")
+    public List<Film> search(@RequestParam String query,
+                             @RequestParam(defaultValue = "title,description") List<String> by,
+                             @RequestParam(defaultValue = "10") int count) {
+        return filmService.search(query, by, count);
+    }
+
+    @GetMapping("/users/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable long id,
+                                         @RequestParam(defaultValue = "10") int count) {
+        return filmService.getRecommendations(id, count);
     }
 
     @PutMapping("/films/{id}/like/{userId}")
@@ -50,4 +97,13 @@ public class FilmController {
         return filmService.dislike(id, userId);
     }
 
+    private void writeLine(OutputStream out, Film film) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(film));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 }
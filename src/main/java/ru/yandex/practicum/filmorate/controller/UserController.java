@@ -1,17 +1,25 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @RestController
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/users")
     public User createNewUser(@Valid @RequestBody User user) {
@@ -29,8 +37,20 @@ public class UserController {
     }
 
     @GetMapping("/users")
-    public List<User> getUsers() {
-        return userService.getUsers();
+    public List<User> getUsers(@RequestParam(required = false) Long after,
+                               @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return userService.getUsers();
+        }
+        return userService.getUsers(after, limit);
+    }
+
+    @GetMapping("/users/stream")
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        StreamingResponseBody body = out -> userService.forEachUser(user -> writeLine(out, user));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/users/{id}/friends")
@@ -44,6 +64,12 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/users/{id}/friends/suggested")
+    public List<User> getSuggestedFriends(@PathVariable long id,
+                                          @RequestParam(defaultValue = "10") int count) {
+        return userService.getSuggestedFriends(id, count);
+    }
+
     @PutMapping("/users/{id}/friends/{friendId}")
     public User addNewFriend(@PathVariable Long id,
                              @PathVariable Long friendId) {
@@ -55,4 +81,13 @@ public class UserController {
                                   @PathVariable Long friendId) {
         return userService.deleteFromFriends(id, friendId);
     }
+
+    private void writeLine(OutputStream out, User user) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(user));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -13,18 +13,22 @@ public class ExceptionHandlers {
     @ExceptionHandler(InvalidRequestException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public Map<String, String> handleInvalidRequest(final RuntimeException e) {
-        return Map.of("Ошибка в запросе:", e.getMessage());
+        return Map.of("Ошибка в запросе:", messageOf(e));
     }
 
     @ExceptionHandler(NotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public Map<String, String> handleNotFound(final RuntimeException e) {
-        return Map.of("Ошибка при поиске ресурса:", e.getMessage());
+        return Map.of("Ошибка при поиске ресурса:", messageOf(e));
     }
 
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public Map<String, String> handleException(final RuntimeException e) {
-        return Map.of("Невозможно обработать запрос:", e.getMessage());
+        return Map.of("Невозможно обработать запрос:", messageOf(e));
+    }
+
+    private static String messageOf(RuntimeException e) {
+        return e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
     }
 }
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public final class QueryCounter {
+    private static final ThreadLocal<AtomicInteger> QUERIES = new ThreadLocal<>();
+
+    private QueryCounter() {
+    }
+
+    public static void start() {
+        QUERIES.set(new AtomicInteger());
+    }
+
+    public static int stop() {
+        AtomicInteger queries = QUERIES.get();
+        QUERIES.remove();
+        return queries == null ? 0 : queries.get();
+    }
+
+    public static <T> Supplier<T> inherit(Supplier<T> task) {
+        AtomicInteger queries = QUERIES.get();
+        if (queries == null) {
+            return task;
+        }
+        return () -> {
+            QUERIES.set(queries);
+            try {
+                return task.get();
+            } finally {
+                QUERIES.remove();
+            }
+        };
+    }
+
+    public static DataSource wrap(DataSource dataSource) {
+        return proxy(DataSource.class, dataSource);
+    }
+
+    private static <T> T proxy(Class<T> type, Object target) {
+        return type.cast(Proxy.newProxyInstance(QueryCounter.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (target instanceof Statement && method.getName().startsWith("execute")) {
+                        increment();
+                    }
+
+                    Class<?> returnType = method.getReturnType();
+                    if (result != null && (returnType == Connection.class || Statement.class.isAssignableFrom(returnType))) {
+                        return proxy(returnType, result);
+                    }
+                    return result;
+                }));
+    }
+
+    private static void increment() {
+        AtomicInteger queries = QUERIES.get();
+        if (queries != null) {
+            queries.incrementAndGet();
+        }
+    }
+}
@@ -18,6 +18,7 @@ public class Film {
     private final List<Genre> genres = new ArrayList<>();
     private Long id;
     @NotBlank
+    @Size(max = 50)
     private String name;
     @Size(max = 200)
     private String description;
@@ -1,11 +1,13 @@
 package ru.yandex.practicum.filmorate.model;
 
 import lombok.Builder;
-import lombok.Data;
+import lombok.Value;
+import lombok.extern.jackson.Jacksonized;
 
-@Data
+@Value
 @Builder(toBuilder = true)
+@Jacksonized
 public class Genre {
-    private int id;
-    private String name;
+    int id;
+    String name;
 }
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Collections;
+import java.util.function.Function;
+
+@Component
+public class FilmCache {
+    private final Cache<Long, Film> films;
+
+    public FilmCache(MeterRegistry meterRegistry,
+                     @Value("${filmorate.cache.films.max-weight:1000000}") long maxWeight) {
+        films = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Long id, Film film) -> 1 + film.getGenres().size() + film.getUsersLiked().size())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, films, "films");
+    }
+
+    public Film get(long id, Function<Long, Film> loader) {
+        return copyOf(films.get(id, loader));
+    }
+
+    public void addLike(long id, long userId) {
+        films.asMap().computeIfPresent(id, (filmId, film) -> {
+            int index = Collections.binarySearch(film.getUsersLiked(), userId);
+            if (index >= 0) {
+                return film;
+            }
+            Film patched = copyOf(film);
+            patched.getUsersLiked().add(-index - 1, userId);
+            return patched;
+        });
+    }
+
+    public void removeLike(long id, long userId) {
+        films.asMap().computeIfPresent(id, (filmId, film) -> {
+            int index = Collections.binarySearch(film.getUsersLiked(), userId);
+            if (index < 0) {
+                return film;
+            }
+            Film patched = copyOf(film);
+            patched.getUsersLiked().remove(index);
+            return patched;
+        });
+    }
+
+    public void invalidate(long id) {
+        films.invalidate(id);
+    }
+
+    private Film copyOf(Film film) {
+        Film copy = film.toBuilder().build();
+        copy.getGenres().addAll(film.getGenres());
+        copy.getUsersLiked().addAll(film.getUsersLiked());
+        return copy;
+    }
+}
@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FilmImportService {
+    private static final int CHUNK_SIZE = 1000;
+    @Qualifier("dbFilms")
+    private final FilmStorage filmStorage;
+    private final GenreService genreService;
+    private final MpaService mpaService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+
+    public List<FilmImportResult> addNewFilms(List<Film> films) {
+        List<FilmImportResult> results = new ArrayList<>(films.size());
+        for (int from = 0; from < films.size(); from += CHUNK_SIZE) {
+            int to = Math.min(from + CHUNK_SIZE, films.size());
+            results.addAll(addChunk(films.subList(from, to), from));
+        }
+        return results;
+    }
+
+    public List<FilmImportResult> addNewFilms(BufferedReader ndjson) throws IOException {
+        List<FilmImportResult> results = new ArrayList<>();
+        List<Film> chunk = new ArrayList<>(CHUNK_SIZE);
+        int index = 0;
+        int chunkStart = 0;
+
+        String line;
+        while ((line = ndjson.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                chunk.add(objectMapper.readValue(line, Film.class));
+            } catch (JsonProcessingException e) {
+                results.addAll(addChunk(chunk, chunkStart));
+                chunk.clear();
+                results.add(failed(index, "Некорректный JSON: " + e.getOriginalMessage()));
+                chunkStart = index + 1;
+            }
+            index++;
+
+            if (chunk.size() == CHUNK_SIZE) {
+                results.addAll(addChunk(chunk, chunkStart));
+                chunk.clear();
+                chunkStart = index;
+            }
+        }
+        results.addAll(addChunk(chunk, chunkStart));
+        return results;
+    }
+
+    private List<FilmImportResult> addChunk(List<Film> chunk, int firstIndex) {
+        List<FilmImportResult> results = new ArrayList<>(chunk.size());
+        List<Film> valid = new ArrayList<>(chunk.size());
+        List<FilmImportResult> added = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Film film = chunk.get(i);
+            String error = validate(film);
+            if (error != null) {
+                results.add(failed(firstIndex + i, error));
+            } else {
+                FilmImportResult result = FilmImportResult.builder().index(firstIndex + i).build();
+                results.add(result);
+                added.add(result);
+                valid.add(film);
+            }
+        }
+
+        if (valid.isEmpty()) {
+            return results;
+        }
+        try {
+            filmStorage.addNewFilms(valid);
+        } catch (DataAccessException e) {
+            log.warn("Не удалось импортировать фильмы с {} по {}", firstIndex, firstIndex + chunk.size() - 1, e);
+            for (FilmImportResult result : added) {
+                result.setError("Ошибка при сохранении фильма: " + e.getMostSpecificCause().getMessage());
+            }
+            return results;
+        }
+        for (int i = 0; i < valid.size(); i++) {
+            added.get(i).setId(valid.get(i).getId());
+        }
+        log.info("Импортировано фильмов: {}", valid.size());
+        return results;
+    }
+
+    private String validate(Film film) {
+        if (film == null) {
+            return "Фильм не может быть пустым";
+        }
+        if (film.getId() != null) {
+            return "id не может быть введен вручную";
+        }
+
+        Set<ConstraintViolation<Film>> violations = validator.validate(film);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+
+        if (film.getGenres().contains(null)) {
+            return "Жанр не может быть пустым";
+        }
+        Set<Integer> genreIds = film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet());
+        if (!genreService.existAll(genreIds)) {
+            return "Данному id не соответствует ни одно наименование жанра";
+        }
+        if (film.getMpa() != null && !mpaService.exists(film.getMpa().getId())) {
+            return "Данному id не соответствует ни одно наименование рейтинга MPA";
+        }
+        return null;
+    }
+
+    private FilmImportResult failed(int index, String error) {
+        return FilmImportResult.builder()
+                .index(index)
+                .error(error)
+                .build();
+    }
+}
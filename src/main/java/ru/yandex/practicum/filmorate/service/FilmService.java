@@ -1,161 +1,233 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.concurrency.FanOut;
 import ru.yandex.practicum.filmorate.exceptions.InvalidRequestException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
-import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
+@Timed("filmorate.service")
 @RequiredArgsConstructor
 @Slf4j
 public class FilmService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
     @Qualifier("dbFilms")
     private final FilmStorage filmStorage;
     private final UserService userService;
     private final GenreService genreService;
     private final MpaService mpaService;
+    private final FilmCache filmCache;
+    @Setter
+    @Value("${filmorate.films.parallel-hydration:false}")
+    private boolean parallelHydration;
+    @Setter
+    @Autowired(required = false)
+    private LikeQueue likeQueue;
 
     public Film addNewFilm(Film film) {
         if (film.getId() != null) {
             log.warn("У фильма, не добавленного в сервис, обнаружен id: {}", film.getName());
             throw new InvalidRequestException("id не может быть введен вручную");
-        } else {
-            film = filmStorage.addNewFilm(film);
         }
+        checkGenresAndMpa(film);
 
-        updateGenres(film);
-        setMpa(film);
-
-        return film;
+        return filmStorage.addNewFilm(film);
     }
 
     public Film updateFilm(Film film) {
         if (film.getId() == null) {
             throw new InvalidRequestException("Фильм не найден, поскольку не указан id");
-        } else if (!filmStorage.contains(film.getId())) {
-            throw new NotFoundException("Фильм с таким id не существует");
         }
 
-        updateGenres(film);
-        setMpa(film);
+        checkGenresAndMpa(film);
         filmStorage.updateFilm(film);
+        filmCache.invalidate(film.getId());
 
         return film;
     }
 
     public List<Film> getFilms() {
-        List<Film> films = filmStorage.getFilms();
-        for (Film film : films) {
-            setGenres(film);
-            setMpa(film);
-            setLikes(film);
+        return filmStorage.getFilms();
+    }
+
+    public List<Film> getFilms(Long after, Integer limit) {
+        if (limit == null) {
+            limit = DEFAULT_PAGE_SIZE;
+        } else if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
         }
 
-        return films;
+        return filmStorage.getFilms(after == null ? 0 : after, limit);
     }
 
-    public Film getFilm(long id) {
-        if (!filmStorage.contains(id)) {
-            throw new NotFoundException("Фильм с таким id не найден");
-        }
-        Film film = filmStorage.getFilm(id);
-        setGenres(film);
-        setMpa(film);
-        setLikes(film);
+    public void forEachFilm(Consumer<Film> action) {
+        long after = 0;
+        List<Film> page;
+        do {
+            page = filmStorage.getFilms(after, MAX_PAGE_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                after = page.getLast().getId();
+            }
+        } while (page.size() == MAX_PAGE_SIZE);
+    }
 
-        return film;
+    public Film getFilm(long id) {
+        return filmCache.get(id, this::loadFilm);
     }
 
     public Film like(long id, long userId) {
-        if (!filmStorage.contains(id)) {
-            log.warn("При добавлении лайка произошла ошибка в поиске фильма по id: {}", id);
-            throw new NotFoundException("Недействительный id");
+        if (likeQueue != null && enqueueLike(id, userId)) {
+            return getFilm(id);
         }
-        if (!userService.contains(userId)) {
-            log.warn("При добавлении лайка произошла ошибка в поиске пользователя по id: {}", userId);
-            throw new NotFoundException("Недействительный id");
+        if (filmStorage.like(id, userId)) {
+            filmCache.addLike(id, userId);
         }
-
-        Film film = getFilm(id);
-        if (!filmStorage.isFilmAlreadyLikedByUser(id, userId)) {
-            film.getUsersLiked().add(userId);
-            filmStorage.like(id, userId);
-        }
-        return film;
+        return getFilm(id);
     }
 
     public Film dislike(long id, long userId) {
-        if (!filmStorage.contains(id)) {
-            log.warn("При удалении лайка произошла ошибка в поиске фильма по id: {}", id);
-            throw new NotFoundException("Недействительный id");
-        }
-        if (!userService.contains(userId)) {
+        boolean removed = likeQueue != null && likeQueue.cancel(id, userId) || filmStorage.dislike(id, userId);
+        if (removed) {
+            filmCache.removeLike(id, userId);
+        } else if (!userService.contains(userId)) {
             log.warn("При удалении лайка произошла ошибка в поиске пользователя по id: {}", userId);
             throw new NotFoundException("Недействительный id");
         }
-
-        Film film = getFilm(id);
-        if (filmStorage.isFilmAlreadyLikedByUser(id, userId)) {
-            film.getUsersLiked().remove(userId);
-            filmStorage.dislike(id, userId);
-        }
-        return film;
+        return getFilm(id);
     }
 
     public List<Film> topByLikes(int count) {
-        List<Film> top = filmStorage.topByLikes(count);
+        return topByLikes(count, null, null);
+    }
+
+    public List<Film> topByLikes(int count, Integer genreId, Integer year) {
+        checkCount(count);
+        List<Film> top = filmStorage.topByLikes(count, genreId, year);
+        if (top.isEmpty() && genreId != null) {
+            genreService.getGenreById(genreId);
+        }
+        return top;
+    }
 
-        List<Long> ids = new ArrayList<>();
-        for (Film film : top) {
-            ids.add(film.getId());
+    public List<Film> getRecommendations(long userId, int count) {
+        checkCount(count);
+        List<Film> recommendations = filmStorage.getRecommendations(userId, count);
+        if (recommendations.isEmpty() && !userService.contains(userId)) {
+            throw new NotFoundException("Пользователь с таким id не существует");
         }
+        return recommendations;
+    }
 
-        Map<Long, List<Long>> likesPerFilms = filmStorage.usersLikedFilms(ids);
-        for (int i = 0; i < top.size(); i++) {
-            if (likesPerFilms.containsKey(top.get(i).getId())) {
-                top.get(i).getUsersLiked().addAll(likesPerFilms.get(top.get(i).getId()));
+    public List<Film> search(String query, List<String> by, int count) {
+        if (query == null || query.isBlank()) {
+            throw new InvalidRequestException("Поисковый запрос не может быть пустым");
+        }
+        checkCount(count);
+
+        Set<FilmSearchIndex.Field> fields = EnumSet.noneOf(FilmSearchIndex.Field.class);
+        for (String field : by) {
+            switch (field.trim().toLowerCase(Locale.ROOT)) {
+                case "title" -> fields.add(FilmSearchIndex.Field.TITLE);
+                case "description" -> fields.add(FilmSearchIndex.Field.DESCRIPTION);
+                default -> throw new InvalidRequestException("Поиск по полю " + field + " не поддерживается");
             }
         }
-        return top;
+        if (fields.isEmpty()) {
+            throw new InvalidRequestException("Не указаны поля для поиска");
+        }
+        return filmStorage.search(query, fields, count);
     }
 
-    private void updateGenres(Film film) {
-        List<Genre> genres = film.getGenres();
-        Set<Integer> ids = genres.stream().map(Genre::getId).collect(Collectors.toSet());
-        if (!genreService.existAll(ids)) {
-            throw new InvalidRequestException("Данному id не соответствует ни одно наименование жанра");
+    private void checkCount(int count) {
+        if (count < 1 || count > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException("Количество фильмов должно быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private boolean enqueueLike(long id, long userId) {
+        if (getFilm(id).getUsersLiked().contains(userId)) {
+            return true;
+        }
+        userService.getUser(userId);
+        if (!likeQueue.offer(id, userId)) {
+            log.debug("Очередь лайков переполнена, лайк пользователя {} фильму {} записывается сразу", userId, id);
+            return false;
+        }
+        filmCache.addLike(id, userId);
+        return true;
+    }
+
+    private Film loadFilm(long id) {
+        if (likeQueue == null) {
+            return hydrateFilm(id);
+        }
+        Set<Long> queued = likeQueue.queued(id);
+        Film film = hydrateFilm(id);
+        if (!queued.isEmpty()) {
+            queued.addAll(film.getUsersLiked());
+            film.getUsersLiked().clear();
+            film.getUsersLiked().addAll(new TreeSet<>(queued));
         }
-        genreService.updateGenres(film.getId(), ids);
+        return film;
     }
 
-    private void setGenres(Film film) {
-        List<Genre> genres = genreService.getFilmGenres(film.getId());
-        film.getGenres().addAll(genres);
+    private Film hydrateFilm(long id) {
+        if (!parallelHydration) {
+            Film film = filmStorage.getFilm(id);
+            film.getGenres().addAll(genreService.getFilmGenres(id));
+            film.getUsersLiked().addAll(filmStorage.usersLikedFilm(id));
+            return film;
+        }
+
+        CompletableFuture<List<Genre>> genres = FanOut.fork(() -> genreService.getFilmGenres(id));
+        CompletableFuture<List<Long>> likes = FanOut.fork(() -> filmStorage.usersLikedFilm(id));
+        Film film = filmStorage.getFilm(id);
+        film.getGenres().addAll(FanOut.join(genres));
+        film.getUsersLiked().addAll(FanOut.join(likes));
+
+        return film;
     }
 
-    private void setMpa(Film film) {
+    private void checkGenresAndMpa(Film film) {
+        Set<Integer> ids = film.getGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (!genreService.existAll(ids)) {
+            throw new InvalidRequestException("Данному id не соответствует ни одно наименование жанра");
+        }
+        film.getGenres().clear();
+        for (int genreId : ids) {
+            film.getGenres().add(genreService.getGenreById(genreId));
+        }
+
         if (film.getMpa() != null) {
             int mpaId = film.getMpa().getId();
             if (!mpaService.exists(mpaId)) {
                 throw new InvalidRequestException("Данному id не соответствует ни одно наименование рейтинга MPA");
             }
             film.setMpa(mpaService.getMpaById(mpaId));
-            mpaService.updateMpa(film.getId(), mpaId);
         }
     }
-
-    private void setLikes(Film film) {
-        film.getUsersLiked().addAll(filmStorage.usersLikedFilm(film.getId()));
-    }
 }
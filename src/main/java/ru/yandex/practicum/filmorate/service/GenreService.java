@@ -2,7 +2,6 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 
@@ -19,9 +18,6 @@ public class GenreService {
     }
 
     public Genre getGenreById(int id) {
-        if (!genreStorage.contains(id)) {
-            throw new NotFoundException("Жанра с данным id не существует");
-        }
         return genreStorage.getGenreById(id);
     }
 
@@ -32,8 +28,4 @@ public class GenreService {
     protected List<Genre> getFilmGenres(long filmId) {
         return genreStorage.getFilmGenres(filmId);
     }
-
-    protected void updateGenres(long filmId, Set<Integer> genresIds) {
-        genreStorage.updateGenres(filmId, genresIds);
-    }
 }
@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.films.like-write-behind.enabled", havingValue = "true")
+public class LikeQueue {
+    private final FilmStorage filmStorage;
+    private final MeterRegistry meterRegistry;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<Long, Set<Long>> pending = new HashMap<>();
+    private Map<Long, Set<Long>> inFlight = Map.of();
+    private int size;
+    private boolean running = true;
+    private Thread flusher;
+
+    public LikeQueue(@Qualifier("dbFilms") FilmStorage filmStorage,
+                     MeterRegistry meterRegistry,
+                     @Value("${filmorate.films.like-write-behind.capacity:100000}") int capacity,
+                     @Value("${filmorate.films.like-write-behind.batch-size:1000}") int batchSize,
+                     @Value("${filmorate.films.like-write-behind.flush-interval-millis:200}") long flushIntervalMillis) {
+        this.filmStorage = filmStorage;
+        this.meterRegistry = meterRegistry;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("filmorate.likes.queued", this, LikeQueue::size).register(meterRegistry);
+        flusher = Thread.ofPlatform()
+                .name("like-flusher")
+                .daemon()
+                .start(this::run);
+    }
+
+    public boolean offer(long filmId, long userId) {
+        lock.lock();
+        try {
+            Set<Long> users = pending.get(filmId);
+            if (users != null && users.contains(userId)) {
+                return true;
+            }
+            if (!running || size >= capacity) {
+                return false;
+            }
+            pending.computeIfAbsent(filmId, id -> new HashSet<>()).add(userId);
+            if (++size >= batchSize) {
+                batchReady.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean cancel(long filmId, long userId) {
+        flushLock.lock();
+        try {
+            lock.lock();
+            try {
+                Set<Long> users = pending.get(filmId);
+                if (users == null || !users.remove(userId)) {
+                    return false;
+                }
+                if (users.isEmpty()) {
+                    pending.remove(filmId);
+                }
+                size--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public Set<Long> queued(long filmId) {
+        lock.lock();
+        try {
+            Set<Long> users = new HashSet<>(pending.getOrDefault(filmId, Set.of()));
+            users.addAll(inFlight.getOrDefault(filmId, Set.of()));
+            return users;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Long, Set<Long>> batch;
+            while (!(batch = drain()).isEmpty()) {
+                try {
+                    log.debug("Записано лайков: {}", write(batch));
+                } catch (RuntimeException e) {
+                    log.error("Не удалось записать лайки, они будут записаны повторно", e);
+                    requeue(batch);
+                    return;
+                } finally {
+                    clearInFlight();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        lock.lock();
+        try {
+            running = false;
+            batchReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.join();
+        }
+        flush();
+        int lost = size();
+        if (lost > 0) {
+            log.error("При остановке не записано лайков: {}", lost);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            lock.lock();
+            try {
+                if (!running) {
+                    return;
+                }
+                if (size < batchSize) {
+                    batchReady.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+                if (!running) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            flush();
+        }
+    }
+
+    private int write(Map<Long, Set<Long>> batch) {
+        try {
+            return filmStorage.likeAll(batch);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Пакет лайков отклонён базой данных, лайки записываются по одному");
+        }
+        int added = 0;
+        for (Map.Entry<Long, Set<Long>> entry : batch.entrySet()) {
+            for (long userId : entry.getValue()) {
+                try {
+                    if (filmStorage.like(entry.getKey(), userId)) {
+                        added++;
+                    }
+                } catch (NotFoundException e) {
+                    log.warn("Лайк пользователя {} фильму {} отброшен: {}", userId, entry.getKey(), e.getMessage());
+                }
+            }
+        }
+        return added;
+    }
+
+    private Map<Long, Set<Long>> drain() {
+        lock.lock();
+        try {
+            Map<Long, Set<Long>> batch = new HashMap<>();
+            int count = 0;
+            Iterator<Map.Entry<Long, Set<Long>>> entries = pending.entrySet().iterator();
+            while (entries.hasNext() && count < batchSize) {
+                Map.Entry<Long, Set<Long>> entry = entries.next();
+                Set<Long> users = entry.getValue();
+                if (count + users.size() <= batchSize) {
+                    batch.put(entry.getKey(), users);
+                    count += users.size();
+                    entries.remove();
+                    continue;
+                }
+                Set<Long> part = new HashSet<>();
+                Iterator<Long> ids = users.iterator();
+                while (count < batchSize) {
+                    part.add(ids.next());
+                    ids.remove();
+                    count++;
+                }
+                batch.put(entry.getKey(), part);
+            }
+            size -= count;
+            inFlight = batch;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void requeue(Map<Long, Set<Long>> batch) {
+        lock.lock();
+        try {
+            batch.forEach((filmId, users) -> {
+                Set<Long> queued = pending.computeIfAbsent(filmId, id -> new HashSet<>());
+                for (long userId : users) {
+                    if (queued.add(userId)) {
+                        size++;
+                    }
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clearInFlight() {
+        lock.lock();
+        try {
+            inFlight = Map.of();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -23,8 +23,4 @@ public class MpaService {
     protected boolean exists(int id) {
         return mpaStorage.contains(id);
     }
-
-    protected void updateMpa(long filmId, int mpaId) {
-        mpaStorage.updateMpa(filmId, mpaId);
-    }
 }
@@ -0,0 +1,119 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+@Component
+public class UserCache {
+    private final Cache<Long, Entry> users;
+    private final AtomicLong writes = new AtomicLong();
+
+    public UserCache(MeterRegistry meterRegistry,
+                     @Value("${filmorate.cache.users.max-weight:1000000}") long maxWeight) {
+        users = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Long id, Entry entry) -> 1 + entry.friends().length)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
+
+    public User get(long id, Function<Long, User> loader) {
+        return users.get(id, userId -> Entry.of(loader.apply(userId))).toUser();
+    }
+
+    public List<User> getAll(List<Long> ids, Function<List<Long>, List<User>> loader) {
+        Map<Long, Entry> present = users.getAllPresent(ids);
+        List<Long> missing = ids.stream()
+                .filter(id -> !present.containsKey(id))
+                .toList();
+
+        Map<Long, Entry> loaded = new HashMap<>();
+        if (!missing.isEmpty()) {
+            long version = writes.get();
+            for (User user : loader.apply(missing)) {
+                loaded.put(user.getId(), Entry.of(user));
+            }
+            if (writes.get() == version) {
+                loaded.forEach(users.asMap()::putIfAbsent);
+            }
+        }
+
+        List<User> result = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            Entry entry = present.containsKey(id) ? present.get(id) : loaded.get(id);
+            if (entry != null) {
+                result.add(entry.toUser());
+            }
+        }
+        return result;
+    }
+
+    public void updateProfile(User user) {
+        writes.incrementAndGet();
+        users.asMap().computeIfPresent(user.getId(), (id, entry) -> new Entry(profileOf(user), entry.friends()));
+    }
+
+    public void addFriend(long id, long friendId) {
+        writes.incrementAndGet();
+        users.asMap().computeIfPresent(id, (userId, entry) -> {
+            int index = Arrays.binarySearch(entry.friends(), friendId);
+            if (index >= 0) {
+                return entry;
+            }
+            int position = -index - 1;
+            long[] friends = new long[entry.friends().length + 1];
+            System.arraycopy(entry.friends(), 0, friends, 0, position);
+            friends[position] = friendId;
+            System.arraycopy(entry.friends(), position, friends, position + 1, entry.friends().length - position);
+            return new Entry(entry.profile(), friends);
+        });
+    }
+
+    public void removeFriend(long id, long friendId) {
+        writes.incrementAndGet();
+        users.asMap().computeIfPresent(id, (userId, entry) -> {
+            int index = Arrays.binarySearch(entry.friends(), friendId);
+            if (index < 0) {
+                return entry;
+            }
+            long[] friends = new long[entry.friends().length - 1];
+            System.arraycopy(entry.friends(), 0, friends, 0, index);
+            System.arraycopy(entry.friends(), index + 1, friends, index, friends.length - index);
+            return new Entry(entry.profile(), friends);
+        });
+    }
+
+    private static User profileOf(User user) {
+        User profile = user.toBuilder().build();
+        profile.getFriends().clear();
+        return profile;
+    }
+
+    private record Entry(User profile, long[] friends) {
+        static Entry of(User user) {
+            long[] friends = user.getFriends().stream()
+                    .mapToLong(Long::longValue)
+                    .sorted()
+                    .toArray();
+            return new Entry(profileOf(user), friends);
+        }
+
+        User toUser() {
+            User user = profile.toBuilder().build();
+            for (long friendId : friends) {
+                user.getFriends().add(friendId);
+            }
+            return user;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -11,24 +12,24 @@ import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
+@Timed("filmorate.service")
 @Slf4j
 @RequiredArgsConstructor
 public class UserService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
     @Qualifier("dbUsers")
     private final UserStorage userStorage;
+    private final UserCache userCache;
 
     public User createNewUser(User user) {
         if (user.getId() != null) {
             log.warn("Обнаружен id у незарегистрированного пользователя: {}", user.getEmail());
             throw new InvalidRequestException("id не может быть введен вручную");
         }
-        if (userStorage.isEmailTaken(user)) {
-            log.warn("У пользователя {} указан email, использованный в другом профиле", user.getLogin());
-            throw new RuntimeException("Данный email уже используется другим пользователем");
-        }
-
         checkName(user);
         return userStorage.createNewUser(user);
     }
@@ -39,12 +40,10 @@ public class UserService {
         if (id == null) {
             log.warn("Не указан id, невозможно обновить информацию о пользователе");
             throw new InvalidRequestException("id не указан");
-        } else if (!userStorage.contains(id)) {
-            log.warn("Пользователя с id {} не существует", id);
-            throw new NotFoundException("Пользователь с таким id не найден");
         }
         userStorage.updateUser(user);
-        user.getFriends().addAll(userStorage.getUserFriendsIds(id));
+        userCache.updateProfile(user);
+        user.getFriends().addAll(getUser(id).getFriends());
 
         return user;
     }
@@ -61,81 +60,121 @@ public class UserService {
         return users;
     }
 
-    public User getUser(long id) {
-        if (!userStorage.contains(id)) {
-            log.warn("Пользователь с id {} не найден", id);
-            throw new NotFoundException("Пользователь с таким id не найден");
+    public List<User> getUsers(Long after, Integer limit) {
+        if (limit == null) {
+            limit = DEFAULT_PAGE_SIZE;
+        } else if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
         }
-        User user = userStorage.getUser(id);
-        user.getFriends().addAll(userStorage.getUserFriendsIds(id));
 
-        return user;
+        return getUsersPage(after == null ? 0 : after, limit);
+    }
+
+    public void forEachUser(Consumer<User> action) {
+        long after = 0;
+        List<User> page;
+        do {
+            page = getUsersPage(after, MAX_PAGE_SIZE);
+            page.forEach(action);
+            if (!page.isEmpty()) {
+                after = page.getLast().getId();
+            }
+        } while (page.size() == MAX_PAGE_SIZE);
+    }
+
+    public User getUser(long id) {
+        return userCache.get(id, this::loadUser);
     }
 
     public User addNewFriend(long id, long friendId) {
-        if (!userStorage.contains(id)) {
-            log.warn("При добавлении пользователя в друзья произошла ошибка поиска по id: {}", id);
-            throw new NotFoundException("Пользователь с таким id не найден");
+        if (userStorage.addNewFriend(id, friendId)) {
+            userCache.addFriend(id, friendId);
         }
-        if (!userStorage.contains(friendId)) {
-            log.warn("При добавлении пользователя в друзья произошла ошибка поиска по id: {}", friendId);
-            throw new NotFoundException("Пользователь с таким id не найден");
+        return getUser(id);
+    }
+
+    public User deleteFromFriends(long id, long friendId) {
+        if (userStorage.deleteFromFriends(id, friendId)) {
+            userCache.removeFriend(id, friendId);
+        } else {
+            checkExists(friendId);
         }
+        return getUser(id);
+    }
 
-        if (!userStorage.friendIsAdded(id, friendId)) {
-            userStorage.addNewFriend(id, friendId);
+    public List<User> getUserFriends(long id) {
+        List<Long> friendsIds = getUser(id).getFriends().stream()
+                .sorted()
+                .toList();
+        return userCache.getAll(friendsIds, ids -> withFriendsIds(userStorage.getUsers(ids)));
+    }
+
+    public List<User> getCommonFriends(long id, long otherId) {
+        List<User> commonFriends = userStorage.getCommonFriends(id, otherId);
+        if (commonFriends.isEmpty()) {
+            checkExists(id);
+            checkExists(otherId);
         }
-        User user = getUser(id);
-        user.getFriends().addAll(userStorage.getUserFriendsIds(id));
+        return withFriendsIds(commonFriends);
+    }
 
-        return user;
+    public List<User> getSuggestedFriends(long id, int count) {
+        if (count < 1 || count > MAX_PAGE_SIZE) {
+            throw new InvalidRequestException("Количество пользователей должно быть от 1 до " + MAX_PAGE_SIZE);
+        }
+
+        List<User> suggested = userStorage.getSuggestedFriends(id, count);
+        if (suggested.isEmpty()) {
+            checkExists(id);
+        }
+        return withFriendsIds(suggested);
     }
 
-    public User deleteFromFriends(long id, long friendId) {
-        if (!userStorage.contains(id)) {
-            log.warn("При удалении пользователя из друзей произошла ошибка поиска по id: {}", id);
-            throw new NotFoundException("Пользователь с таким id не найден");
+    public boolean contains(long id) {
+        return userStorage.contains(id);
+    }
+
+    private List<User> getUsersPage(long after, int limit) {
+        List<User> users = userStorage.getUsers(after, limit);
+        if (users.isEmpty()) {
+            return users;
         }
-        if (!userStorage.contains(friendId)) {
-            log.warn("При удалении пользователя из друзей произошла ошибка поиска по id: {}", friendId);
-            throw new NotFoundException("Пользователь с таким id не найден");
+
+        Map<Long, List<Long>> usersFriendsIds = userStorage.getUsersFriendsIds(after, users.getLast().getId());
+        for (User user : users) {
+            if (usersFriendsIds.containsKey(user.getId())) {
+                user.getFriends().addAll(usersFriendsIds.get(user.getId()));
+            }
         }
+        return users;
+    }
 
-        User user = getUser(id);
-        userStorage.deleteFromFriends(id, friendId);
-        user.getFriends().remove(friendId);
+    private User loadUser(long id) {
+        User user = userStorage.getUser(id);
+        user.getFriends().addAll(userStorage.getUserFriendsIds(id));
 
         return user;
     }
 
-    public List<User> getUserFriends(long id) {
+    private void checkExists(long id) {
         if (!userStorage.contains(id)) {
             log.warn("Пользователь с id {} не найден", id);
             throw new NotFoundException("Пользователь с таким id не найден");
         }
-
-        return userStorage.getUserFriends(id);
     }
 
-    public List<User> getCommonFriends(long id, long otherId) {
-        if (!userStorage.contains(id)) {
-            log.warn("Пользователь с id {} не найден", id);
-            throw new NotFoundException("Недействительный id");
-        }
-        if (!userStorage.contains(otherId)) {
-            log.warn("Пользователь с id {} не найден", otherId);
-            throw new NotFoundException("Недействительный id");
+    private List<User> withFriendsIds(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
         }
 
-        List<User> commonFriends = userStorage.getCommonFriends(id, otherId);
-        for (User friend : commonFriends) {
-            friend.getFriends().addAll(userStorage.getUserFriendsIds(friend.getId()));
+        Map<Long, List<Long>> friendsIds = userStorage.getUsersFriendsIds(users.stream()
+                .map(User::getId)
+                .toList());
+        for (User user : users) {
+            user.getFriends().addAll(friendsIds.getOrDefault(user.getId(), List.of()));
         }
-        return commonFriends;
-    }
-
-    public boolean contains(long id) {
-        return userStorage.contains(id);
+        return users;
     }
 
     private void checkName(User user) {
@@ -1,34 +1,55 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 @Repository
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class GenreStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final Genre[] genres;
+
+    @Autowired
+    public GenreStorage(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.genres = load(jdbcTemplate);
+    }
+
+    private static Genre[] load(JdbcTemplate jdbcTemplate) {
+        String query = "SELECT * FROM genres ORDER BY genre_id;";
+        List<Genre> loaded = jdbcTemplate.query(query, GenreStorage::mapRowToGenre);
+
+        Genre[] snapshot = new Genre[loaded.isEmpty() ? 0 : loaded.getLast().getId() + 1];
+        for (Genre genre : loaded) {
+            snapshot[genre.getId()] = genre;
+        }
+        return snapshot;
+    }
 
     public List<Genre> getGenres() {
-        String query = "SELECT * FROM genres;";
-        return jdbcTemplate.query(query, this::mapRowToGenre);
+        return Arrays.stream(genres)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     public Genre getGenreById(int id) {
-        String query = "SELECT * FROM genres WHERE genre_id = ? ;";
-        return jdbcTemplate.queryForObject(query, this::mapRowToGenre, id);
+        if (!contains(id)) {
+            throw new NotFoundException("Жанра с данным id не существует");
+        }
+        return genres[id];
     }
 
-    private Genre mapRowToGenre(ResultSet resultSet, int rowNum) throws SQLException {
+    private static Genre mapRowToGenre(ResultSet resultSet, int rowNum) throws SQLException {
         return Genre.builder()
                 .id(resultSet.getInt("genre_id"))
                 .name(resultSet.getString("genre_name"))
@@ -36,37 +57,23 @@ public class GenreStorage {
     }
 
     public boolean contains(int id) {
-        String query = "SELECT COUNT(*) FROM genres WHERE genre_id = ?";
-        Integer count = jdbcTemplate.queryForObject(query, Integer.class, id);
-        return count > 0;
+        return id >= 0 && id < genres.length && genres[id] != null;
     }
 
     public boolean containsAll(Set<Integer> ids) {
-        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
-        String query = String.format("SELECT COUNT(*) FROM genres WHERE genre_id IN (%s)", inSql);
-
-        Integer count = jdbcTemplate.queryForObject(query, Integer.class, ids.toArray());
-        return count == ids.size();
+        for (int id : ids) {
+            if (!contains(id)) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    @Timed(value = "filmorate.storage", extraTags = {"storage", "db"})
     public List<Genre> getFilmGenres(long filmId) {
         String findGenresForFilm = "SELECT g.genre_id, g.genre_name FROM film_genres AS fg " +
                 "JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "WHERE film_id = ?;";
-        return jdbcTemplate.query(findGenresForFilm, this::mapRowToGenre, filmId);
-    }
-
-    public void updateGenres(long filmId, Set<Integer> ids) {
-        String queryDeleteGenres = "DELETE FROM film_genres WHERE film_id = ?;";
-        jdbcTemplate.update(queryDeleteGenres, filmId);
-
-        String queryAddGenre = "INSERT INTO film_genres (film_id, genre_id, last_update) " +
-                "VALUES (?, ?, ?) ;";
-        for (int genre : ids) {
-            jdbcTemplate.update(queryAddGenre,
-                    filmId,
-                    genre,
-                    new Timestamp(System.currentTimeMillis()));
-        }
+                "WHERE film_id = ? ORDER BY g.genre_id;";
+        return jdbcTemplate.query(findGenresForFilm, GenreStorage::mapRowToGenre, filmId);
     }
 }
@@ -1,6 +1,5 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
@@ -9,27 +8,44 @@ import ru.yandex.practicum.filmorate.model.Mpa;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 @Repository
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class MpaStorage {
-    private final JdbcTemplate jdbcTemplate;
+    private final Mpa[] ratings;
+
+    @Autowired
+    public MpaStorage(JdbcTemplate jdbcTemplate) {
+        this.ratings = load(jdbcTemplate);
+    }
+
+    private static Mpa[] load(JdbcTemplate jdbcTemplate) {
+        String query = "SELECT * FROM mpa ORDER BY mpa_id;";
+        List<Mpa> loaded = jdbcTemplate.query(query, MpaStorage::mapRowToMpa);
+
+        Mpa[] snapshot = new Mpa[loaded.isEmpty() ? 0 : loaded.getLast().getId() + 1];
+        for (Mpa mpa : loaded) {
+            snapshot[mpa.getId()] = mpa;
+        }
+        return snapshot;
+    }
 
     public List<Mpa> getMpa() {
-        String query = "SELECT * FROM mpa ;";
-        return jdbcTemplate.query(query, this::mapRowToMpa);
+        return Arrays.stream(ratings)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     public Mpa getMpaById(int id) {
         if (!contains(id)) {
             throw new NotFoundException("Данному id не соответствует ни один MPA");
         }
-        String query = "SELECT * FROM mpa WHERE mpa_id = ?";
-        return jdbcTemplate.queryForObject(query, this::mapRowToMpa, id);
+        return ratings[id];
     }
 
-    private Mpa mapRowToMpa(ResultSet resultSet, int numRow) throws SQLException {
+    private static Mpa mapRowToMpa(ResultSet resultSet, int numRow) throws SQLException {
         return Mpa.builder()
                 .id(resultSet.getInt("mpa_id"))
                 .name(resultSet.getString("mpa_name"))
@@ -37,14 +53,6 @@ public class MpaStorage {
     }
 
     public boolean contains(int id) {
-        String query = "SELECT COUNT(*) FROM mpa WHERE mpa_id = ?;";
-        Integer count = jdbcTemplate.queryForObject(query, Integer.class, id);
-
-        return count > 0;
-    }
-
-    public void updateMpa(long filmId, int mpaId) {
-        String queryUpdate = "UPDATE films SET mpa = ? WHERE film_id = ? ;";
-        jdbcTemplate.update(queryUpdate, mpaId, filmId);
+        return id >= 0 && id < ratings.length && ratings[id] != null;
     }
 }
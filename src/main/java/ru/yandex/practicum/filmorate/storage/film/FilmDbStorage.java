@@ -1,97 +1,237 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.*;
 
 @Repository("dbFilms")
-@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Timed(value = "filmorate.storage", extraTags = {"storage", "db"})
 public class FilmDbStorage implements FilmStorage {
+    private static final int LIKE_COUNTER_STRIPES = 8;
+    private static final String SELECT_FILMS = "SELECT f.film_id, f.name, f.description, f.releaseDate, f.duration, " +
+            "f.mpa, m.mpa_name FROM films AS f LEFT JOIN mpa AS m ON f.mpa = m.mpa_id ";
     private final JdbcTemplate jdbcTemplate;
+    private final FilmPopularity popularity = new FilmPopularity();
+    private final LikesMatrix likesMatrix = new LikesMatrix();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+
+    @Autowired
+    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        loadPopularity();
+        loadLikesMatrix();
+        loadSearchIndex();
+    }
 
     @Override
+    @Transactional
     public Film addNewFilm(Film film) {
-        film.setId(getNextId());
-        String queryFilms = "INSERT INTO films (film_id, name, description, releaseDate, duration) " +
-                "VALUES (?, ?, ?, ?, ?)";
-        jdbcTemplate.update(queryFilms,
-                film.getId(),
-                film.getName(),
-                film.getDescription(),
-                film.getReleaseDate(),
-                film.getDuration());
+        addNewFilms(List.of(film));
         return film;
     }
 
     @Override
+    @Transactional
+    public List<Film> addNewFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        String queryFilms = "INSERT INTO films (name, description, releaseDate, duration, mpa) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(queryFilms, new String[]{"film_id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setObject(3, film.getReleaseDate());
+                        ps.setInt(4, film.getDuration());
+                        ps.setObject(5, film.getMpa() == null ? null : film.getMpa().getId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        List<Long> ids = new ArrayList<>(films.size());
+        List<Object[]> genres = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(((Number) keys.get(i).values().iterator().next()).longValue());
+            ids.add(film.getId());
+            for (int genreId : genreIds(film)) {
+                genres.add(new Object[]{film.getId(), genreId, now});
+            }
+        }
+
+        String queryGenres = "INSERT INTO film_genres (film_id, genre_id, last_update) VALUES (?, ?, ?);";
+        jdbcTemplate.batchUpdate(queryGenres, genres);
+        addLikeCounters(ids);
+        afterCommit(() -> {
+            for (Film film : films) {
+                popularity.put(film.getId(), genreIds(film), film.getReleaseDate().getYear(), 0);
+                searchIndex.index(film.getId(), film.getName(), film.getDescription());
+            }
+        });
+        return films;
+    }
+
+    @Override
+    @Transactional
     public void updateFilm(Film film) {
         long filmId = film.getId();
+        String queryFilms = "UPDATE films SET name = ?, description = ?, releaseDate = ?, duration = ?, mpa = ? " +
+                "WHERE film_id = ?";
+        int updatedRows = jdbcTemplate.update(queryFilms,
+                film.getName(),
+                film.getDescription(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                film.getMpa() == null ? null : film.getMpa().getId(),
+                filmId);
+        if (updatedRows == 0) {
+            throw new NotFoundException("Фильм с таким id не существует");
+        }
+
+        String queryCurrentGenres = "SELECT genre_id FROM film_genres WHERE film_id = ?;";
+        Set<Integer> current = new HashSet<>(jdbcTemplate.queryForList(queryCurrentGenres, Integer.class, filmId));
+        Set<Integer> updated = genreIds(film);
+
+        List<Object[]> removed = new ArrayList<>();
+        for (int genreId : current) {
+            if (!updated.contains(genreId)) {
+                removed.add(new Object[]{filmId, genreId});
+            }
+        }
+        if (!removed.isEmpty()) {
+            String queryDelete = "DELETE FROM film_genres WHERE film_id = ? AND genre_id = ?;";
+            jdbcTemplate.batchUpdate(queryDelete, removed);
+        }
 
-        if (film.getMpa() != null) {
-            String queryFilms = "UPDATE films SET film_id = ?, name = ?, description = ?, releaseDate = ?, duration = ?, mpa = ? WHERE film_id = ?";
-            jdbcTemplate.update(queryFilms,
-                    filmId,
-                    film.getName(),
-                    film.getDescription(),
-                    film.getReleaseDate(),
-                    film.getDuration(),
-                    film.getMpa().getId(),
-                    filmId);
-        } else {
-            String queryFilms = "UPDATE films SET film_id = ?, name = ?, description = ?, releaseDate = ?, duration = ?, mpa = NULL WHERE film_id = ?";
-            jdbcTemplate.update(queryFilms,
-                    filmId,
-                    film.getName(),
-                    film.getDescription(),
-                    film.getReleaseDate(),
-                    film.getDuration(),
-                    filmId);
+        List<Object[]> added = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int genreId : updated) {
+            if (!current.contains(genreId)) {
+                added.add(new Object[]{filmId, genreId, now});
+            }
+        }
+        if (!added.isEmpty()) {
+            String queryInsert = "INSERT INTO film_genres (film_id, genre_id, last_update) VALUES (?, ?, ?);";
+            jdbcTemplate.batchUpdate(queryInsert, added);
         }
+        afterCommit(() -> {
+            popularity.move(filmId, updated, film.getReleaseDate().getYear());
+            searchIndex.index(filmId, film.getName(), film.getDescription());
+        });
     }
 
     @Override
     public List<Film> getFilms() {
-        String query = "SELECT * FROM films;";
-        return jdbcTemplate.query(query, this::mapRowToFilm);
+        String query = SELECT_FILMS + "ORDER BY f.film_id;";
+        List<Film> films = jdbcTemplate.query(query, this::mapRowToFilm);
+        addGenresAndLikes(films, "");
+
+        return films;
+    }
+
+    @Override
+    public List<Film> getFilms(long after, int limit) {
+        String query = SELECT_FILMS + "WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?;";
+        List<Film> films = jdbcTemplate.query(query, this::mapRowToFilm, after, limit);
+        if (!films.isEmpty()) {
+            addGenresAndLikes(films, "WHERE film_id > ? AND film_id <= ?", after, films.getLast().getId());
+        }
+
+        return films;
     }
 
     @Override
     public Film getFilm(long id) {
-        String query = "SELECT * FROM films WHERE film_id = ?";
-        return jdbcTemplate.queryForObject(query, this::mapRowToFilm, id);
+        String query = SELECT_FILMS + "WHERE f.film_id = ?";
+        try {
+            return jdbcTemplate.queryForObject(query, this::mapRowToFilm, id);
+        } catch (EmptyResultDataAccessException e) {
+            throw new NotFoundException("Фильм с таким id не найден");
+        }
     }
 
     @Override
-    public void like(long id, long userId) {
-        String query = "INSERT INTO likes (film_id, user_id, created) VALUES (?, ?, ?);";
-        jdbcTemplate.update(query, id, userId, new Timestamp(System.currentTimeMillis()));
+    @Transactional
+    public boolean like(long id, long userId) {
+        String query = "INSERT INTO likes (film_id, user_id, created) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?);";
+        try {
+            if (jdbcTemplate.update(query, id, userId, new Timestamp(System.currentTimeMillis()), id, userId) == 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            throw new NotFoundException("Недействительный id");
+        }
+        updateLikeCounter(id, userId, 1);
+        afterCommit(() -> {
+            popularity.add(id, 1);
+            likesMatrix.like(id, userId);
+        });
+        return true;
     }
 
     @Override
-    public void dislike(long id, long userId) {
+    @Transactional
+    public boolean dislike(long id, long userId) {
         String query = "DELETE FROM likes WHERE film_id = ? AND user_id = ?;";
-        jdbcTemplate.update(query, id, userId);
+        if (jdbcTemplate.update(query, id, userId) == 0) {
+            return false;
+        }
+        updateLikeCounter(id, userId, -1);
+        afterCommit(() -> {
+            popularity.add(id, -1);
+            likesMatrix.dislike(id, userId);
+        });
+        return true;
     }
 
     @Override
-    public List<Film> topByLikes(int count) {
-        String query = "SELECT f.film_id, f.name, f.description, f.releaseDate, f.duration, f.mpa, COUNT(user_id) AS count " +
-                "FROM films AS f JOIN likes AS l ON f.film_id = l.film_id " +
-                "WHERE l.film_id IN " +
-                "(SELECT film_id FROM likes GROUP BY film_id LIMIT ?) " +
-                "GROUP BY f.film_id " +
-                "ORDER BY count DESC;";
-        List<Film> topFilms = jdbcTemplate.query(query, this::mapRowToFilm, count);
+    public List<Film> topByLikes(int count, Integer genreId, Integer year) {
+        return getFilmsByIds(popularity.top(count, genreId, year));
+    }
 
-        return topFilms;
+    @Override
+    public List<Film> getRecommendations(long userId, int count) {
+        return getFilmsByIds(likesMatrix.recommend(userId, count));
+    }
+
+    @Override
+    public List<Film> search(String query, Set<FilmSearchIndex.Field> by, int count) {
+        return getFilmsByIds(searchIndex.search(query, by, count, popularity::likes));
     }
 
     @Override
@@ -103,11 +243,40 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
-    public boolean isFilmAlreadyLikedByUser(long id, long userId) {
-        String query = "SELECT COUNT(*) FROM likes WHERE film_id = ? AND user_id = ?;";
-        Integer count = jdbcTemplate.queryForObject(query, Integer.class, id, userId);
+    @Transactional
+    public int likeAll(Map<Long, Set<Long>> likes) {
+        List<Object[]> rows = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        likes.forEach((filmId, users) -> {
+            for (long userId : users) {
+                rows.add(new Object[]{filmId, userId, now, filmId, userId});
+            }
+        });
+        String query = "INSERT INTO likes (film_id, user_id, created) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM likes WHERE film_id = ? AND user_id = ?);";
+        int[] inserted = jdbcTemplate.batchUpdate(query, rows);
 
-        return count > 0;
+        Map<Long, int[]> deltas = new HashMap<>();
+        List<Object[]> added = new ArrayList<>();
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] == 0) {
+                continue;
+            }
+            long filmId = (long) rows.get(i)[0];
+            long userId = (long) rows.get(i)[1];
+            deltas.computeIfAbsent(filmId, id -> new int[LIKE_COUNTER_STRIPES])
+                    [Math.floorMod(userId, LIKE_COUNTER_STRIPES)]++;
+            added.add(rows.get(i));
+        }
+        updateLikeCounters(deltas);
+
+        afterCommit(() -> {
+            for (Object[] like : added) {
+                popularity.add((long) like[0], 1);
+                likesMatrix.like((long) like[0], (long) like[1]);
+            }
+        });
+        return added.size();
     }
 
     @Override
@@ -129,7 +298,7 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public List<Long> usersLikedFilm(Long filmId) {
-        String queryGetLikes = "SELECT user_id FROM likes WHERE film_id = ?;";
+        String queryGetLikes = "SELECT user_id FROM likes WHERE film_id = ? ORDER BY user_id;";
         return jdbcTemplate.queryForList(queryGetLikes, Long.class, filmId);
 
     }
@@ -143,16 +312,175 @@ public class FilmDbStorage implements FilmStorage {
                 .duration(resultSet.getInt("duration"))
                 .build();
         if (resultSet.getInt("mpa") != 0) {
-            Mpa mpa = Mpa.builder().id(resultSet.getInt("mpa")).build();
+            Mpa mpa = Mpa.builder()
+                    .id(resultSet.getInt("mpa"))
+                    .name(resultSet.getString("mpa_name"))
+                    .build();
             film.setMpa(mpa);
         }
         return film;
     }
 
-    private long getNextId() {
-        String query = "SELECT max(film_id) FROM films ;";
-        Optional<Long> currentId = Optional.ofNullable(jdbcTemplate.queryForObject(query, Long.class));
+    private List<Film> getFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String query = SELECT_FILMS + String.format("WHERE f.film_id IN (%s);", inSql);
+        List<Film> films = jdbcTemplate.query(query, this::mapRowToFilm, ids.toArray());
+        addGenresAndLikes(films, String.format("WHERE film_id IN (%s)", inSql), ids.toArray());
+
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+        List<Film> ordered = new ArrayList<>(films.size());
+        for (long id : ids) {
+            if (filmsById.containsKey(id)) {
+                ordered.add(filmsById.get(id));
+            }
+        }
+        return ordered;
+    }
+
+    private Set<Integer> genreIds(Film film) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (Genre genre : film.getGenres()) {
+            ids.add(genre.getId());
+        }
+        return ids;
+    }
+
+    private void addLikeCounters(List<Long> filmIds) {
+        String query = "INSERT INTO film_like_counters (film_id, stripe, like_count) VALUES (?, ?, 0);";
+        List<Object[]> stripes = new ArrayList<>(filmIds.size() * LIKE_COUNTER_STRIPES);
+        for (long filmId : filmIds) {
+            for (int stripe = 0; stripe < LIKE_COUNTER_STRIPES; stripe++) {
+                stripes.add(new Object[]{filmId, stripe});
+            }
+        }
+        jdbcTemplate.batchUpdate(query, stripes);
+    }
+
+    private void updateLikeCounters(Map<Long, int[]> deltas) {
+        List<Object[]> updates = new ArrayList<>();
+        deltas.forEach((filmId, stripes) -> {
+            for (int stripe = 0; stripe < stripes.length; stripe++) {
+                if (stripes[stripe] != 0) {
+                    updates.add(new Object[]{stripes[stripe], filmId, stripe});
+                }
+            }
+        });
+        if (updates.isEmpty()) {
+            return;
+        }
+        String queryUpdate = "UPDATE film_like_counters SET like_count = like_count + ? " +
+                "WHERE film_id = ? AND stripe = ?;";
+        int[] updated = jdbcTemplate.batchUpdate(queryUpdate, updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Object[] update = updates.get(i);
+                inserts.add(new Object[]{update[1], update[2], update[0]});
+            }
+        }
+        if (!inserts.isEmpty()) {
+            String queryInsert = "INSERT INTO film_like_counters (film_id, stripe, like_count) VALUES (?, ?, ?);";
+            jdbcTemplate.batchUpdate(queryInsert, inserts);
+        }
+    }
+
+    private void updateLikeCounter(long filmId, long userId, int delta) {
+        int stripe = Math.floorMod(userId, LIKE_COUNTER_STRIPES);
+        String queryUpdate = "UPDATE film_like_counters SET like_count = like_count + ? " +
+                "WHERE film_id = ? AND stripe = ?;";
+        if (jdbcTemplate.update(queryUpdate, delta, filmId, stripe) == 0) {
+            String queryInsert = "INSERT INTO film_like_counters (film_id, stripe, like_count) VALUES (?, ?, ?);";
+            jdbcTemplate.update(queryInsert, filmId, stripe, delta);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private void loadPopularity() {
+        Map<Long, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, genre_id FROM film_genres;", (RowCallbackHandler) rs ->
+                genres.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getInt("genre_id")));
+
+        String query = "SELECT f.film_id, EXTRACT(YEAR FROM f.releaseDate) AS release_year, " +
+                "COALESCE(SUM(c.like_count), 0) AS likes " +
+                "FROM films AS f LEFT JOIN film_like_counters AS c ON f.film_id = c.film_id " +
+                "GROUP BY f.film_id, f.releaseDate;";
+        popularity.clear();
+        jdbcTemplate.query(query, (RowCallbackHandler) rs -> popularity.put(rs.getLong("film_id"),
+                genres.getOrDefault(rs.getLong("film_id"), List.of()),
+                rs.getInt("release_year"),
+                rs.getLong("likes")));
+    }
 
-        return currentId.map(id -> id + 1).orElse(1L);
+    private void loadLikesMatrix() {
+        String query = "SELECT film_id, user_id FROM likes ORDER BY film_id, user_id;";
+        SortedMap<Long, List<Long>> likes = new TreeMap<>();
+        jdbcTemplate.query(query, (RowCallbackHandler) rs ->
+                likes.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getLong("user_id")));
+
+        SortedMap<Long, long[]> usersByFilm = new TreeMap<>();
+        likes.forEach((filmId, userIds) -> usersByFilm.put(filmId, userIds.stream()
+                .mapToLong(Long::longValue)
+                .toArray()));
+        likesMatrix.load(usersByFilm);
+    }
+
+    private void loadSearchIndex() {
+        String query = "SELECT film_id, name, description FROM films;";
+        searchIndex.clear();
+        jdbcTemplate.query(query, (RowCallbackHandler) rs ->
+                searchIndex.index(rs.getLong("film_id"), rs.getString("name"), rs.getString("description")));
+    }
+
+    private void addGenresAndLikes(List<Film> films, String filter, Object... args) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            filmsById.put(film.getId(), film);
+        }
+
+        String queryGenres = "SELECT fg.film_id, g.genre_id, g.genre_name FROM film_genres AS fg " +
+                "JOIN genres AS g ON fg.genre_id = g.genre_id " +
+                filter +
+                " ORDER BY fg.film_id, g.genre_id;";
+        jdbcTemplate.query(queryGenres, (RowCallbackHandler) rs -> {
+            Film film = filmsById.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getGenres().add(Genre.builder()
+                        .id(rs.getInt("genre_id"))
+                        .name(rs.getString("genre_name"))
+                        .build());
+            }
+        }, args);
+
+        String queryLikes = "SELECT film_id, user_id FROM likes " +
+                filter +
+                " ORDER BY film_id, user_id;";
+        jdbcTemplate.query(queryLikes, (RowCallbackHandler) rs -> {
+            Film film = filmsById.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getUsersLiked().add(rs.getLong("user_id"));
+            }
+        }, args);
     }
 }
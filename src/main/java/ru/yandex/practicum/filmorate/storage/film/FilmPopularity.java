@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class FilmPopularity {
+    private final FilmRanking all = new FilmRanking();
+    private final Map<Integer, FilmRanking> byGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, FilmRanking> byYear = new ConcurrentHashMap<>();
+    private final Map<Long, FilmRanking> byGenreAndYear = new ConcurrentHashMap<>();
+    private final Map<Long, Placement> placements = new ConcurrentHashMap<>();
+
+    public void put(long filmId, Collection<Integer> genreIds, int year, long likes) {
+        placements.compute(filmId, (id, old) -> {
+            Placement placement = new Placement(Set.copyOf(genreIds), year);
+            if (old != null) {
+                rankings(old).forEach(ranking -> ranking.remove(id));
+            }
+            all.put(id, likes);
+            rankings(placement).forEach(ranking -> ranking.put(id, likes));
+            return placement;
+        });
+    }
+
+    public void move(long filmId, Collection<Integer> genreIds, int year) {
+        placements.compute(filmId, (id, old) -> {
+            Placement placement = new Placement(Set.copyOf(genreIds), year);
+            if (old != null) {
+                rankings(old).forEach(ranking -> ranking.remove(id));
+            }
+            long likes = all.likes(id);
+            rankings(placement).forEach(ranking -> ranking.put(id, likes));
+            return placement;
+        });
+    }
+
+    public void add(long filmId, long delta) {
+        placements.compute(filmId, (id, placement) -> {
+            long likes = all.add(id, delta);
+            if (placement != null) {
+                rankings(placement).forEach(ranking -> ranking.put(id, likes));
+            }
+            return placement;
+        });
+    }
+
+    public long likes(long filmId) {
+        return all.likes(filmId);
+    }
+
+    public List<Long> top(int count, Integer genreId, Integer year) {
+        FilmRanking ranking;
+        if (genreId != null && year != null) {
+            ranking = byGenreAndYear.get(key(genreId, year));
+        } else if (genreId != null) {
+            ranking = byGenre.get(genreId);
+        } else if (year != null) {
+            ranking = byYear.get(year);
+        } else {
+            ranking = all;
+        }
+        return ranking == null ? new ArrayList<>() : ranking.top(count);
+    }
+
+    public void clear() {
+        placements.clear();
+        all.clear();
+        byGenre.clear();
+        byYear.clear();
+        byGenreAndYear.clear();
+    }
+
+    private List<FilmRanking> rankings(Placement placement) {
+        List<FilmRanking> rankings = new ArrayList<>(placement.genreIds().size() * 2 + 1);
+        rankings.add(byYear.computeIfAbsent(placement.year(), year -> new FilmRanking()));
+        for (int genreId : placement.genreIds()) {
+            rankings.add(byGenre.computeIfAbsent(genreId, id -> new FilmRanking()));
+            rankings.add(byGenreAndYear.computeIfAbsent(key(genreId, placement.year()), key -> new FilmRanking()));
+        }
+        return rankings;
+    }
+
+    private long key(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    private record Placement(Set<Integer> genreIds, int year) {
+    }
+}
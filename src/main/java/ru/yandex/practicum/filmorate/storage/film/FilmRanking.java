@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public class FilmRanking {
+    private static final Comparator<Score> ORDER = Comparator.comparingLong(Score::likes).reversed()
+            .thenComparingLong(Score::filmId);
+    private final Map<Long, Score> scores = new ConcurrentHashMap<>();
+    private final NavigableSet<Score> ranking = new ConcurrentSkipListSet<>(ORDER);
+
+    public void put(long filmId, long likes) {
+        scores.compute(filmId, (id, old) -> replace(old, new Score(id, likes)));
+    }
+
+    public long add(long filmId, long delta) {
+        Score score = scores.compute(filmId, (id, old) ->
+                replace(old, new Score(id, (old == null ? 0 : old.likes()) + delta)));
+        return score.likes();
+    }
+
+    public void remove(long filmId) {
+        scores.computeIfPresent(filmId, (id, old) -> {
+            ranking.remove(old);
+            return null;
+        });
+    }
+
+    public long likes(long filmId) {
+        Score score = scores.get(filmId);
+        return score == null ? 0 : score.likes();
+    }
+
+    public List<Long> top(int count) {
+        List<Long> top = new ArrayList<>(Math.min(count, scores.size()));
+        Set<Long> seen = new HashSet<>();
+        for (Score score : ranking) {
+            if (top.size() == count) {
+                break;
+            }
+            if (seen.add(score.filmId())) {
+                top.add(score.filmId());
+            }
+        }
+        return top;
+    }
+
+    public void clear() {
+        scores.clear();
+        ranking.clear();
+    }
+
+    private Score replace(Score old, Score updated) {
+        if (old != null) {
+            ranking.remove(old);
+        }
+        ranking.add(updated);
+        return updated;
+    }
+
+    private record Score(long filmId, long likes) {
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongUnaryOperator;
+import java.util.regex.Pattern;
+
+public class FilmSearchIndex {
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int PREFIX_MIN_LENGTH = 3;
+    private final Map<Field, Postings> postings = new EnumMap<>(Field.class);
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+
+    public FilmSearchIndex() {
+        for (Field field : Field.values()) {
+            postings.put(field, new Postings());
+        }
+    }
+
+    public void index(long filmId, String title, String description) {
+        documents.compute(filmId, (id, old) -> {
+            Document document = new Document(frequencies(title), frequencies(description));
+            for (Field field : Field.values()) {
+                Map<String, Integer> before = old == null ? Map.of() : old.terms(field);
+                Map<String, Integer> after = document.terms(field);
+                before.keySet().stream()
+                        .filter(term -> !after.containsKey(term))
+                        .forEach(term -> postings.get(field).remove(term, id));
+                after.forEach((term, frequency) -> postings.get(field).put(term, id, frequency));
+            }
+            return document;
+        });
+    }
+
+    public List<Long> search(String query, Set<Field> fields, int count, LongUnaryOperator likes) {
+        Map<Long, Integer> scores = null;
+        for (String token : frequencies(query).keySet()) {
+            Map<Long, Integer> tokenScores = new HashMap<>();
+            for (Field field : fields) {
+                postings.get(field).match(token, field.weight, tokenScores);
+            }
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                scores.keySet().retainAll(tokenScores.keySet());
+                scores.replaceAll((id, score) -> score + tokenScores.get(id));
+            }
+            if (scores.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+        if (scores == null) {
+            return new ArrayList<>();
+        }
+
+        Comparator<Hit> order = Comparator.comparingInt(Hit::score)
+                .thenComparingLong(Hit::likes)
+                .thenComparing(Comparator.comparingLong(Hit::filmId).reversed());
+        PriorityQueue<Hit> top = new PriorityQueue<>(Math.min(count, scores.size()) + 1, order);
+        scores.forEach((id, score) -> {
+            top.add(new Hit(id, score, likes.applyAsLong(id)));
+            if (top.size() > count) {
+                top.poll();
+            }
+        });
+
+        List<Long> ids = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ids.add(top.poll().filmId());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    public void clear() {
+        documents.clear();
+        postings.values().forEach(Postings::clear);
+    }
+
+    private static Map<String, Integer> frequencies(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        for (String token : SEPARATOR.split(text.toLowerCase(Locale.ROOT).replace('ё', 'е'))) {
+            if (!token.isEmpty()) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+        }
+        return frequencies;
+    }
+
+    public enum Field {
+        TITLE(3),
+        DESCRIPTION(1);
+
+        private final int weight;
+
+        Field(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    private static class Postings {
+        private final Map<String, Map<Long, Integer>> films = new ConcurrentHashMap<>();
+        private final NavigableSet<String> terms = new ConcurrentSkipListSet<>();
+
+        void put(String term, long filmId, int frequency) {
+            films.compute(term, (t, ids) -> {
+                if (ids == null) {
+                    ids = new ConcurrentHashMap<>();
+                    terms.add(t);
+                }
+                ids.put(filmId, frequency);
+                return ids;
+            });
+        }
+
+        void remove(String term, long filmId) {
+            films.computeIfPresent(term, (t, ids) -> {
+                ids.remove(filmId);
+                if (ids.isEmpty()) {
+                    terms.remove(t);
+                    return null;
+                }
+                return ids;
+            });
+        }
+
+        void match(String token, int weight, Map<Long, Integer> scores) {
+            Collection<String> matched = token.length() < PREFIX_MIN_LENGTH
+                    ? List.of(token)
+                    : terms.subSet(token, true, token + Character.MAX_VALUE, false);
+            for (String term : matched) {
+                Map<Long, Integer> ids = films.get(term);
+                if (ids == null) {
+                    continue;
+                }
+                int termWeight = term.equals(token) ? weight * 2 : weight;
+                ids.forEach((id, frequency) -> scores.merge(id, frequency * termWeight, Integer::sum));
+            }
+        }
+
+        void clear() {
+            films.clear();
+            terms.clear();
+        }
+    }
+
+    private record Document(Map<String, Integer> title, Map<String, Integer> description) {
+        Map<String, Integer> terms(Field field) {
+            return field == Field.TITLE ? title : description;
+        }
+    }
+
+    private record Hit(long filmId, int score, long likes) {
+    }
+}
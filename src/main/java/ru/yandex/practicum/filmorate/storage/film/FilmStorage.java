@@ -4,28 +4,37 @@ import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface FilmStorage {
 
     Film addNewFilm(Film film);
 
+    List<Film> addNewFilms(List<Film> films);
+
     void updateFilm(Film film);
 
     List<Film> getFilms();
 
+    List<Film> getFilms(long after, int limit);
+
     Film getFilm(long id);
 
-    void like(long id, long userId);
+    boolean like(long id, long userId);
 
-    boolean isFilmAlreadyLikedByUser(long id, long userId);
+    int likeAll(Map<Long, Set<Long>> likes);
 
     Map<Long, List<Long>> usersLikedFilms(List<Long> filmsIds);
 
     List<Long> usersLikedFilm(Long filmId);
 
-    void dislike(long id, long userId);
+    boolean dislike(long id, long userId);
+
+    List<Film> topByLikes(int count, Integer genreId, Integer year);
+
+    List<Film> getRecommendations(long userId, int count);
 
-    List<Film> topByLikes(int count);
+    List<Film> search(String query, Set<FilmSearchIndex.Field> by, int count);
 
     boolean contains(long id);
 }
@@ -1,112 +1,218 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component("InMemoryFilms")
-@RequiredArgsConstructor
+@Timed(value = "filmorate.storage", extraTags = {"storage", "memory"})
 @Slf4j
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Long, Film> films = new HashMap<>();
-    private long id = 0;
-    @Qualifier("InMemoryUsers")
-    private UserStorage userStorage;
+    private final NavigableMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final LikesMatrix likes = new LikesMatrix();
+    private final FilmPopularity popularity = new FilmPopularity();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final AtomicLong id = new AtomicLong();
+    private final UserStorage userStorage;
+
+    public InMemoryFilmStorage(@Qualifier("InMemoryUsers") UserStorage userStorage) {
+        this.userStorage = userStorage;
+    }
 
     @Override
     public Film addNewFilm(Film film) {
-        film.setId(getNextId());
-        films.put(film.getId(), film);
+        film.setId(id.incrementAndGet());
+        likes.addFilm(film.getId());
+        films.put(film.getId(), copyOf(film));
+        popularity.put(film.getId(), genreIds(film), film.getReleaseDate().getYear(), 0);
+        searchIndex.index(film.getId(), film.getName(), film.getDescription());
         log.info("Фильм {} успешно добавлен", film.getName());
 
         return film;
     }
 
+    @Override
+    public List<Film> addNewFilms(List<Film> films) {
+        for (Film film : films) {
+            addNewFilm(film);
+        }
+        return films;
+    }
+
     @Override
     public void updateFilm(Film film) {
-        if (films.containsKey(film.getId())) {
-            films.put(film.getId(), film);
-            log.info("Фильм с id {} успешно изменён", film.getId());
+        if (films.replace(film.getId(), copyOf(film)) == null) {
+            log.warn("Фильм с id {} не найден", film.getId());
+            throw new NotFoundException("Фильм с данным id не найден");
         }
-        log.warn("Фильм с id {} не найден", film.getId());
-        throw new NotFoundException("Фильм с данным id не найден");
+        popularity.move(film.getId(), genreIds(film), film.getReleaseDate().getYear());
+        searchIndex.index(film.getId(), film.getName(), film.getDescription());
+        log.info("Фильм с id {} успешно изменён", film.getId());
     }
 
     @Override
     public List<Film> getFilms() {
-        return List.copyOf(films.values());
+        return films.values().stream()
+                .map(this::withLikes)
+                .toList();
+    }
+
+    @Override
+    public List<Film> getFilms(long after, int limit) {
+        return films.tailMap(after, false).values().stream()
+                .limit(limit)
+                .map(this::withLikes)
+                .toList();
     }
 
     @Override
     public Film getFilm(long id) {
-        if (films.containsKey(id)) {
-            return films.get(id);
+        Film film = films.get(id);
+        if (film == null) {
+            log.warn("Фильм с id {} не найден", id);
+            throw new NotFoundException("Фильм с данным id не найден");
         }
-        log.warn("Фильм с id {} не найден", id);
-        throw new NotFoundException("Фильм с данным id не найден");
+        return withLikes(film);
     }
 
     @Override
-    public void like(long id, long userId) {
-        Film film = getFilm(id);
-        film.getUsersLiked().add(userId);
-
-        log.info("Пользователь {} поставил лайк фильму {}",
-                userStorage.getUser(userId).getLogin(),
-                film.getName());
+    public boolean like(long id, long userId) {
+        checkFilm(id);
+        if (!userStorage.contains(userId)) {
+            log.warn("Пользователь с id {} не найден", userId);
+            throw new NotFoundException("Недействительный id");
+        }
+        if (!likes.like(id, userId)) {
+            return false;
+        }
+        popularity.add(id, 1);
+        log.info("Пользователь {} поставил лайк фильму {}", userId, id);
+        return true;
     }
 
     @Override
-    public boolean isFilmAlreadyLikedByUser(long id, long userId) {
-        return films.get(id).getUsersLiked().contains(userId);
+    public int likeAll(Map<Long, Set<Long>> likes) {
+        int added = 0;
+        for (Map.Entry<Long, Set<Long>> entry : likes.entrySet()) {
+            for (long userId : entry.getValue()) {
+                if (like(entry.getKey(), userId)) {
+                    added++;
+                }
+            }
+        }
+        return added;
     }
 
     @Override
     public Map<Long, List<Long>> usersLikedFilms(List<Long> filmIds) {
         Map<Long, List<Long>> likesPerFilms = new HashMap<>();
-
-        for (Film film : films.values()) {
-            if (!likesPerFilms.containsKey(film.getId())) {
-                likesPerFilms.put(film.getId(), new ArrayList<>());
+        for (long filmId : filmIds) {
+            if (likes.containsFilm(filmId)) {
+                likesPerFilms.put(filmId, toList(likes.users(filmId)));
             }
-            likesPerFilms.get(film.getId()).addAll(film.getUsersLiked());
         }
         return likesPerFilms;
     }
 
     @Override
     public List<Long> usersLikedFilm(Long filmId) {
-        return films.get(filmId).getUsersLiked();
+        checkFilm(filmId);
+        return toList(likes.users(filmId));
     }
 
     @Override
-    public void dislike(long id, long userId) {
-        Film film = getFilm(id);
-        film.getUsersLiked().remove(userStorage.getUser(userId));
-        log.info("Пользователь {} успешно убрал лайк с фильма {}",
-                userStorage.getUser(userId).getLogin(),
-                film.getName());
+    public boolean dislike(long id, long userId) {
+        checkFilm(id);
+        if (!likes.dislike(id, userId)) {
+            return false;
+        }
+        popularity.add(id, -1);
+        log.info("Пользователь {} успешно убрал лайк с фильма {}", userId, id);
+        return true;
     }
 
     @Override
-    public List<Film> topByLikes(int count) {
-        return getFilms().stream()
-                .sorted(Comparator.comparing(film -> film.getUsersLiked().size(), Comparator.reverseOrder()))
-                .limit(count)
-                .toList();
+    public List<Film> topByLikes(int count, Integer genreId, Integer year) {
+        List<Long> ids = popularity.top(count, genreId, year);
+        List<Film> top = new ArrayList<>(ids.size());
+        for (long filmId : ids) {
+            Film film = films.get(filmId);
+            if (film != null) {
+                top.add(withLikes(film));
+            }
+        }
+        return top;
+    }
+
+    @Override
+    public List<Film> getRecommendations(long userId, int count) {
+        List<Long> ids = likes.recommend(userId, count);
+        List<Film> recommendations = new ArrayList<>(ids.size());
+        for (long filmId : ids) {
+            Film film = films.get(filmId);
+            if (film != null) {
+                recommendations.add(withLikes(film));
+            }
+        }
+        return recommendations;
+    }
+
+    @Override
+    public List<Film> search(String query, Set<FilmSearchIndex.Field> by, int count) {
+        List<Long> ids = searchIndex.search(query, by, count, popularity::likes);
+        List<Film> found = new ArrayList<>(ids.size());
+        for (long filmId : ids) {
+            Film film = films.get(filmId);
+            if (film != null) {
+                found.add(withLikes(film));
+            }
+        }
+        return found;
     }
 
     public boolean contains(long filmId) {
         return films.containsKey(filmId);
     }
 
-    private long getNextId() {
-        return ++id;
+    private void checkFilm(long id) {
+        if (!films.containsKey(id)) {
+            log.warn("Фильм с id {} не найден", id);
+            throw new NotFoundException("Фильм с данным id не найден");
+        }
+    }
+
+    private Film withLikes(Film film) {
+        Film copy = copyOf(film);
+        likes.forEachUser(film.getId(), copy.getUsersLiked()::add);
+        return copy;
+    }
+
+    private Film copyOf(Film film) {
+        Film copy = film.toBuilder().build();
+        copy.getGenres().addAll(film.getGenres());
+        return copy;
+    }
+
+    private List<Integer> genreIds(Film film) {
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .toList();
+    }
+
+    private List<Long> toList(long[] ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
     }
 }
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.storage.graph.IdGraph;
+import ru.yandex.practicum.filmorate.storage.graph.TopScores;
+
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+
+public class LikesMatrix {
+    private static final int SIMILAR_USERS = 50;
+    private static final int PARALLEL_THRESHOLD = 64;
+    private final IdGraph usersByFilm = new IdGraph();
+    private final IdGraph filmsByUser = new IdGraph();
+
+    public void load(SortedMap<Long, long[]> likes) {
+        clear();
+        Map<Long, List<Long>> userLikes = new HashMap<>();
+        likes.forEach((filmId, userIds) -> {
+            usersByFilm.put(filmId, userIds);
+            for (long userId : userIds) {
+                userLikes.computeIfAbsent(userId, id -> new ArrayList<>()).add(filmId);
+            }
+        });
+        userLikes.forEach((userId, filmIds) -> {
+            long[] ids = new long[filmIds.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = filmIds.get(i);
+            }
+            filmsByUser.put(userId, ids);
+        });
+    }
+
+    public void addFilm(long filmId) {
+        usersByFilm.addNode(filmId);
+    }
+
+    public boolean like(long filmId, long userId) {
+        filmsByUser.add(userId, filmId);
+        return usersByFilm.add(filmId, userId);
+    }
+
+    public boolean dislike(long filmId, long userId) {
+        filmsByUser.remove(userId, filmId);
+        return usersByFilm.remove(filmId, userId);
+    }
+
+    public boolean contains(long filmId, long userId) {
+        return usersByFilm.contains(filmId, userId);
+    }
+
+    public boolean containsFilm(long filmId) {
+        return usersByFilm.containsNode(filmId);
+    }
+
+    public long[] users(long filmId) {
+        return usersByFilm.neighbours(filmId);
+    }
+
+    public void forEachUser(long filmId, LongConsumer action) {
+        usersByFilm.forEachNeighbour(filmId, action);
+    }
+
+    public void clear() {
+        usersByFilm.clear();
+        filmsByUser.clear();
+    }
+
+    public List<Long> recommend(long userId, int count) {
+        long[] liked = filmsByUser.neighbours(userId);
+        if (liked.length == 0) {
+            return new ArrayList<>();
+        }
+
+        Map<Long, int[]> overlaps = stream(liked).collect(HashMap::new,
+                (counts, filmId) -> usersByFilm.forEachNeighbour(filmId, otherId -> {
+                    if (otherId != userId) {
+                        counts.computeIfAbsent(otherId, id -> new int[1])[0]++;
+                    }
+                }),
+                TopScores::merge);
+
+        long[] similar = TopScores.top(overlaps, SIMILAR_USERS).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+        Map<Long, int[]> scores = stream(similar).collect(HashMap::new,
+                (filmScores, otherId) -> {
+                    int overlap = overlaps.get(otherId)[0];
+                    filmsByUser.forEachNeighbour(otherId, filmId -> {
+                        if (Arrays.binarySearch(liked, filmId) < 0) {
+                            filmScores.computeIfAbsent(filmId, id -> new int[1])[0] += overlap;
+                        }
+                    });
+                },
+                TopScores::merge);
+
+        return TopScores.top(scores, count);
+    }
+
+    private LongStream stream(long[] ids) {
+        LongStream stream = Arrays.stream(ids);
+        return ids.length < PARALLEL_THRESHOLD ? stream : stream.parallel();
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.storage.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+public final class FriendSuggestions {
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private FriendSuggestions() {
+    }
+
+    public static List<Long> suggest(IdGraph friends, long userId, int count) {
+        long[] userFriends = friends.neighbours(userId);
+        if (userFriends.length == 0) {
+            return new ArrayList<>();
+        }
+
+        LongStream friendIds = Arrays.stream(userFriends);
+        if (userFriends.length >= PARALLEL_THRESHOLD) {
+            friendIds = friendIds.parallel();
+        }
+        Map<Long, int[]> mutualCounts = friendIds.collect(HashMap::new,
+                (counts, friendId) -> friends.forEachNeighbour(friendId, candidateId -> {
+                    if (candidateId != userId && Arrays.binarySearch(userFriends, candidateId) < 0) {
+                        counts.computeIfAbsent(candidateId, id -> new int[1])[0]++;
+                    }
+                }),
+                TopScores::merge);
+
+        return TopScores.top(mutualCounts, count);
+    }
+}
@@ -0,0 +1,215 @@
+package ru.yandex.practicum.filmorate.storage.graph;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+public class IdGraph {
+    private static final int BLOCK_SIZE = 256;
+    private static final long[][] EMPTY = new long[0][];
+    private static final long[] NO_IDS = new long[0];
+    private final Map<Long, long[][]> adjacency = new ConcurrentHashMap<>();
+
+    public void addNode(long node) {
+        adjacency.putIfAbsent(node, EMPTY);
+    }
+
+    public boolean containsNode(long node) {
+        return adjacency.containsKey(node);
+    }
+
+    public void removeNode(long node) {
+        adjacency.remove(node);
+    }
+
+    public Set<Long> nodes() {
+        return adjacency.keySet();
+    }
+
+    public void put(long node, long[] sortedIds) {
+        int blocksCount = (sortedIds.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long[][] blocks = new long[blocksCount][];
+        for (int i = 0; i < blocksCount; i++) {
+            int from = i * BLOCK_SIZE;
+            blocks[i] = Arrays.copyOfRange(sortedIds, from, Math.min(from + BLOCK_SIZE, sortedIds.length));
+        }
+        adjacency.put(node, blocks);
+    }
+
+    public boolean add(long from, long to) {
+        boolean[] changed = new boolean[1];
+        adjacency.compute(from, (node, blocks) -> {
+            long[][] current = blocks == null ? EMPTY : blocks;
+            long[][] updated = insert(current, to);
+            changed[0] = updated != current;
+            return updated;
+        });
+        return changed[0];
+    }
+
+    public boolean remove(long from, long to) {
+        boolean[] changed = new boolean[1];
+        adjacency.computeIfPresent(from, (node, blocks) -> {
+            long[][] updated = delete(blocks, to);
+            changed[0] = updated != blocks;
+            return updated;
+        });
+        return changed[0];
+    }
+
+    public boolean contains(long from, long to) {
+        long[][] blocks = adjacency.get(from);
+        if (blocks == null) {
+            return false;
+        }
+        int block = findBlock(blocks, to);
+        return block < blocks.length && Arrays.binarySearch(blocks[block], to) >= 0;
+    }
+
+    public int degree(long node) {
+        long[][] blocks = adjacency.get(node);
+        return blocks == null ? 0 : degree(blocks);
+    }
+
+    public long[] neighbours(long node) {
+        long[][] blocks = adjacency.get(node);
+        if (blocks == null || blocks.length == 0) {
+            return NO_IDS;
+        }
+        if (blocks.length == 1) {
+            return blocks[0].clone();
+        }
+        long[] ids = new long[degree(blocks)];
+        int position = 0;
+        for (long[] block : blocks) {
+            System.arraycopy(block, 0, ids, position, block.length);
+            position += block.length;
+        }
+        return ids;
+    }
+
+    public void forEachNeighbour(long node, LongConsumer action) {
+        long[][] blocks = adjacency.getOrDefault(node, EMPTY);
+        for (long[] block : blocks) {
+            for (long id : block) {
+                action.accept(id);
+            }
+        }
+    }
+
+    public void clear() {
+        adjacency.clear();
+    }
+
+    public static long[] intersect(long[] first, long[] second) {
+        if (first.length > second.length) {
+            return intersect(second, first);
+        }
+        long[] result = new long[first.length];
+        int size = 0;
+        if ((long) first.length * 32 < second.length) {
+            for (long id : first) {
+                if (Arrays.binarySearch(second, id) >= 0) {
+                    result[size++] = id;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < first.length && j < second.length) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    result[size++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int degree(long[][] blocks) {
+        int degree = 0;
+        for (long[] block : blocks) {
+            degree += block.length;
+        }
+        return degree;
+    }
+
+    private static int findBlock(long[][] blocks, long id) {
+        int low = 0;
+        int high = blocks.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long[] block = blocks[middle];
+            if (block[block.length - 1] < id) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static long[][] insert(long[][] blocks, long id) {
+        if (blocks.length == 0) {
+            return new long[][]{{id}};
+        }
+        int blockIndex = Math.min(findBlock(blocks, id), blocks.length - 1);
+        long[] block = blocks[blockIndex];
+        int position = Arrays.binarySearch(block, id);
+        if (position >= 0) {
+            return blocks;
+        }
+        position = -position - 1;
+
+        long[] grown = new long[block.length + 1];
+        System.arraycopy(block, 0, grown, 0, position);
+        grown[position] = id;
+        System.arraycopy(block, position, grown, position + 1, block.length - position);
+
+        if (grown.length <= 2 * BLOCK_SIZE) {
+            long[][] updated = blocks.clone();
+            updated[blockIndex] = grown;
+            return updated;
+        }
+
+        long[][] updated = new long[blocks.length + 1][];
+        System.arraycopy(blocks, 0, updated, 0, blockIndex);
+        updated[blockIndex] = Arrays.copyOfRange(grown, 0, grown.length / 2);
+        updated[blockIndex + 1] = Arrays.copyOfRange(grown, grown.length / 2, grown.length);
+        System.arraycopy(blocks, blockIndex + 1, updated, blockIndex + 2, blocks.length - blockIndex - 1);
+        return updated;
+    }
+
+    private static long[][] delete(long[][] blocks, long id) {
+        int blockIndex = findBlock(blocks, id);
+        if (blockIndex == blocks.length) {
+            return blocks;
+        }
+        long[] block = blocks[blockIndex];
+        int position = Arrays.binarySearch(block, id);
+        if (position < 0) {
+            return blocks;
+        }
+
+        if (block.length == 1) {
+            long[][] updated = new long[blocks.length - 1][];
+            System.arraycopy(blocks, 0, updated, 0, blockIndex);
+            System.arraycopy(blocks, blockIndex + 1, updated, blockIndex, blocks.length - blockIndex - 1);
+            return updated;
+        }
+
+        long[] shrunk = new long[block.length - 1];
+        System.arraycopy(block, 0, shrunk, 0, position);
+        System.arraycopy(block, position + 1, shrunk, position, block.length - position - 1);
+        long[][] updated = blocks.clone();
+        updated[blockIndex] = shrunk;
+        return updated;
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.storage.graph;
+
+import java.util.*;
+
+public final class TopScores {
+    private static final Comparator<Map.Entry<Long, int[]>> WEAKEST_FIRST =
+            Comparator.<Map.Entry<Long, int[]>>comparingInt(entry -> entry.getValue()[0])
+                    .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+
+    private TopScores() {
+    }
+
+    public static List<Long> top(Map<Long, int[]> scores, int count) {
+        int capacity = Math.min(count, scores.size()) + 1;
+        PriorityQueue<Map.Entry<Long, int[]>> top = new PriorityQueue<>(capacity, WEAKEST_FIRST);
+        for (Map.Entry<Long, int[]> entry : scores.entrySet()) {
+            if (top.size() < count) {
+                top.add(entry);
+            } else if (WEAKEST_FIRST.compare(entry, top.peek()) > 0) {
+                top.poll();
+                top.add(entry);
+            }
+        }
+
+        Long[] ids = new Long[top.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = top.poll().getKey();
+        }
+        return Arrays.asList(ids);
+    }
+
+    public static void merge(Map<Long, int[]> into, Map<Long, int[]> from) {
+        from.forEach((id, score) -> into.merge(id, score, (a, b) -> new int[]{a[0] + b[0]}));
+    }
+}
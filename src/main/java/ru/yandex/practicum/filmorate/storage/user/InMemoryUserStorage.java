@@ -1,22 +1,34 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.graph.FriendSuggestions;
+import ru.yandex.practicum.filmorate.storage.graph.IdGraph;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Component("InMemoryUsers")
+@Timed(value = "filmorate.storage", extraTags = {"storage", "memory"})
 @Slf4j
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Long, User> users = new HashMap<>();
-    private long id = 0;
+    private final NavigableMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final IdGraph friends = new IdGraph();
+    private final AtomicLong id = new AtomicLong();
 
     @Override
     public User createNewUser(User user) {
+        if (isEmailTaken(user)) {
+            log.warn("У пользователя {} указан email, использованный в другом профиле", user.getLogin());
+            throw new RuntimeException("Данный email уже используется другим пользователем");
+        }
         user.setId(getNextId());
-        users.put(user.getId(), user);
+        friends.addNode(user.getId());
+        users.put(user.getId(), copyOf(user));
         log.info("Пользователь с email {} успешно добавлен", user.getEmail());
 
         return user;
@@ -24,73 +36,111 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public void updateUser(User user) {
-        if (users.containsKey(user.getId())) {
-            checkName(user);
-            users.put(user.getId(), user);
-            log.info("Пользователь с id {} успешно обновлён", user.getId());
+        checkName(user);
+        if (users.replace(user.getId(), copyOf(user)) == null) {
+            log.warn("Пользователя с id {} не существует", user.getId());
+            throw new NotFoundException("Пользователь с данным id не найден");
         }
-        log.warn("Пользователя с id {} не существует", user.getId());
-        throw new NotFoundException("Пользователь с данным id не найден");
+        log.info("Пользователь с id {} успешно обновлён", user.getId());
     }
 
     @Override
     public List<User> getUsers() {
-        return List.copyOf(users.values());
+        return users.values().stream()
+                .map(this::withFriends)
+                .toList();
+    }
+
+    @Override
+    public List<User> getUsers(long after, int limit) {
+        return users.tailMap(after, false).values().stream()
+                .limit(limit)
+                .map(this::withFriends)
+                .toList();
+    }
+
+    @Override
+    public List<User> getUsers(List<Long> ids) {
+        return ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(this::withFriends)
+                .toList();
     }
 
     @Override
     public User getUser(long id) {
-        if (users.containsKey(id)) {
-            return users.get(id);
+        User user = users.get(id);
+        if (user == null) {
+            log.warn("Пользователя с данным id не существует");
+            throw new NotFoundException("Недействительный id");
         }
-        log.warn("Пользователя с данным id не существует");
-        throw new NotFoundException("Недействительный id");
+        return withFriends(user);
     }
 
     @Override
-    public void addNewFriend(long id, long friendId) {
-        User user = getUser(id);
-        User friend = getUser(friendId);
+    public boolean addNewFriend(long id, long friendId) {
+        checkUser(id);
+        checkUser(friendId);
 
-        user.getFriends().add(friendId);
-        friend.getFriends().add(id);
+        boolean added = friends.add(id, friendId);
+        friends.add(friendId, id);
 
-        log.info("Пользователь {} успешно добавил(а) в друзья пользователя {}", user.getLogin(), friend.getLogin());
+        log.info("Пользователь {} успешно добавил(а) в друзья пользователя {}", id, friendId);
+        return added;
     }
 
     @Override
     public List<User> getUserFriends(long id) {
-        List<User> friends = new ArrayList<>();
-
-        User user = getUser(id);
-        for (long friendId : user.getFriends()) {
-            friends.add(getUser(friendId));
+        List<User> userFriends = new ArrayList<>();
+        checkUser(id);
+        for (long friendId : friends.neighbours(id)) {
+            userFriends.add(getUser(friendId));
         }
-        return friends;
+        return userFriends;
     }
 
     @Override
     public List<Long> getUserFriendsIds(long id) {
-        return new ArrayList<>(getUser(id).getFriends());
+        checkUser(id);
+        return toList(friends.neighbours(id));
     }
 
     @Override
     public Map<Long, List<Long>> getUsersFriendsIds() {
         Map<Long, List<Long>> usersFriendsIds = new HashMap<>();
-        for (User user : users.values()) {
-            usersFriendsIds.put(user.getId(), new ArrayList<>(user.getFriends()));
+        for (long userId : friends.nodes()) {
+            usersFriendsIds.put(userId, toList(friends.neighbours(userId)));
         }
         return usersFriendsIds;
     }
 
     @Override
-    public List<User> getCommonFriends(long id, long otherId) {
-        Set<Long> u1FriendsId = getUser(id).getFriends();
-        Set<Long> u2FriendsId = getUser(otherId).getFriends();
-        u1FriendsId.retainAll(u2FriendsId);
+    public Map<Long, List<Long>> getUsersFriendsIds(long fromId, long toId) {
+        Map<Long, List<Long>> usersFriendsIds = new HashMap<>();
+        for (long userId : users.subMap(fromId, false, toId, true).keySet()) {
+            usersFriendsIds.put(userId, toList(friends.neighbours(userId)));
+        }
+        return usersFriendsIds;
+    }
+
+    @Override
+    public Map<Long, List<Long>> getUsersFriendsIds(List<Long> ids) {
+        Map<Long, List<Long>> usersFriendsIds = new HashMap<>();
+        for (long userId : ids) {
+            if (friends.containsNode(userId)) {
+                usersFriendsIds.put(userId, toList(friends.neighbours(userId)));
+            }
+        }
+        return usersFriendsIds;
+    }
 
+    @Override
+    public List<User> getCommonFriends(long id, long otherId) {
+        checkUser(id);
+        checkUser(otherId);
         List<User> intersection = new ArrayList<>();
-        for (long friendId : u1FriendsId) {
+        for (long friendId : IdGraph.intersect(friends.neighbours(id), friends.neighbours(otherId))) {
             intersection.add(getUser(friendId));
         }
 
@@ -99,28 +149,58 @@ public class InMemoryUserStorage implements UserStorage {
     }
 
     @Override
-    public void deleteFromFriends(long id, long friendId) {
-        User user = getUser(id);
-        User friend = getUser(friendId);
-
-        user.getFriends().remove(friendId);
-        friend.getFriends().remove(id);
-
-        log.info("Пользователь {} успешно удалил(а) из друзей пользователя {}", user.getLogin(), friend.getLogin());
+    public List<User> getSuggestedFriends(long id, int count) {
+        checkUser(id);
+        List<User> suggested = new ArrayList<>();
+        for (long friendId : FriendSuggestions.suggest(friends, id, count)) {
+            suggested.add(getUser(friendId));
+        }
+        return suggested;
     }
 
     @Override
-    public boolean friendIsAdded(long id, long friendId) {
-        return users.get(id).getFriends().contains(friendId);
+    public boolean deleteFromFriends(long id, long friendId) {
+        checkUser(id);
+        checkUser(friendId);
+
+        boolean deleted = friends.remove(id, friendId);
+        friends.remove(friendId, id);
+
+        log.info("Пользователь {} успешно удалил(а) из друзей пользователя {}", id, friendId);
+        return deleted;
     }
 
     public boolean contains(long id) {
         return users.containsKey(id);
     }
 
-    @Override
-    public long getNextId() {
-        return ++id;
+    private long getNextId() {
+        return id.incrementAndGet();
+    }
+
+    private void checkUser(long id) {
+        if (!users.containsKey(id)) {
+            log.warn("Пользователя с данным id не существует");
+            throw new NotFoundException("Недействительный id");
+        }
+    }
+
+    private User withFriends(User user) {
+        User copy = copyOf(user);
+        friends.forEachNeighbour(user.getId(), copy.getFriends()::add);
+        return copy;
+    }
+
+    private User copyOf(User user) {
+        return user.toBuilder().build();
+    }
+
+    private List<Long> toList(long[] ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
     }
 
     private void checkName(User user) {
@@ -129,7 +209,7 @@ public class InMemoryUserStorage implements UserStorage {
         }
     }
 
-    public boolean isEmailTaken(User user) {
+    private boolean isEmailTaken(User user) {
         String email = user.getEmail();
         for (User u : users.values()) {
             if (email.equals(u.getEmail())) {
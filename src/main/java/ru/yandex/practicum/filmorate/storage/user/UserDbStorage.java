@@ -1,58 +1,78 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.graph.FriendSuggestions;
+import ru.yandex.practicum.filmorate.storage.graph.IdGraph;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
 
 @Slf4j
 @Repository("dbUsers")
+@Timed(value = "filmorate.storage", extraTags = {"storage", "db"})
 public class UserDbStorage implements UserStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final IdGraph friendsGraph = new IdGraph();
 
     @Autowired
     public UserDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        loadFriendsGraph();
     }
 
     @Override
     public User createNewUser(User user) {
-        user.setId(getNextId());
-        String query = "INSERT INTO users (user_id, login, name, email, birthday) VALUES (?, ?, ?, ?, ?)";
-        jdbcTemplate.update(query,
-                user.getId(),
-                user.getLogin(),
-                user.getName(),
-                user.getEmail(),
-                user.getBirthday());
+        String query = "INSERT INTO users (login, name, email, birthday) VALUES (?, ?, ?, ?)";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(query, new String[]{"user_id"});
+                ps.setString(1, user.getLogin());
+                ps.setString(2, user.getName());
+                ps.setString(3, user.getEmail());
+                ps.setObject(4, user.getBirthday());
+                return ps;
+            }, keyHolder);
+        } catch (DuplicateKeyException e) {
+            throw emailTaken(user);
+        }
+        user.setId(keyHolder.getKeyAs(Long.class));
         return user;
     }
 
-    @Override
-    public boolean isEmailTaken(User user) {
-        String email = user.getEmail();
-        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE email = ?",
-                Integer.class, email);
-
-        return count > 0;
-    }
-
     @Override
     public void updateUser(User user) {
         Long id = user.getId();
 
         String query = "UPDATE users SET login = ?, name = ?, email = ?, birthday = ? WHERE users.user_id = ?";
-        jdbcTemplate.update(query,
-                user.getLogin(),
-                user.getName(),
-                user.getEmail(),
-                user.getBirthday(),
-                id);
+        int updatedRows;
+        try {
+            updatedRows = jdbcTemplate.update(query,
+                    user.getLogin(),
+                    user.getName(),
+                    user.getEmail(),
+                    user.getBirthday(),
+                    id);
+        } catch (DuplicateKeyException e) {
+            throw emailTaken(user);
+        }
+        if (updatedRows == 0) {
+            log.warn("Пользователя с id {} не существует", id);
+            throw new NotFoundException("Пользователь с таким id не найден");
+        }
     }
 
     @Override
@@ -61,10 +81,43 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(query, this::mapRowToUser);
     }
 
+    @Override
+    public List<User> getUsers(long after, int limit) {
+        String query = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+        return jdbcTemplate.query(query, this::mapRowToUser, after, limit);
+    }
+
+    @Override
+    public List<User> getUsers(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String query = String.format("SELECT * FROM users WHERE user_id IN (%s);", inSql);
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : jdbcTemplate.query(query, this::mapRowToUser, ids.toArray())) {
+            usersById.put(user.getId(), user);
+        }
+
+        List<User> users = new ArrayList<>(ids.size());
+        for (long userId : ids) {
+            User user = usersById.get(userId);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
     @Override
     public User getUser(long id) {
         String query = "SELECT * FROM users WHERE user_id = ?";
-        return jdbcTemplate.queryForObject(query, this::mapRowToUser, id);
+        try {
+            return jdbcTemplate.queryForObject(query, this::mapRowToUser, id);
+        } catch (EmptyResultDataAccessException e) {
+            log.warn("Пользователь с id {} не найден", id);
+            throw new NotFoundException("Пользователь с таким id не найден");
+        }
     }
 
     @Override
@@ -76,19 +129,21 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
-    public long getNextId() {
-        String query = "SELECT max(user_id) FROM users ;";
-        Optional<Long> currentId = Optional.ofNullable(jdbcTemplate.queryForObject(query, Long.class));
-
-        return currentId.map(id -> id + 1).orElse(1L);
-    }
-
-    @Override
-    public void addNewFriend(long id, long friendId) {
-        String queryAddFollower = "INSERT INTO friends" +
-                "(following_user_id, followed_user_id)" +
-                "VALUES(?, ?);";
-        jdbcTemplate.update(queryAddFollower, id, friendId);
+    public boolean addNewFriend(long id, long friendId) {
+        String queryAddFollower = "INSERT INTO friends (following_user_id, followed_user_id) SELECT ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM friends WHERE following_user_id = ? AND followed_user_id = ?);";
+        try {
+            if (jdbcTemplate.update(queryAddFollower, id, friendId, id, friendId) == 0) {
+                return false;
+            }
+        } catch (DuplicateKeyException e) {
+            return false;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("При добавлении пользователя {} в друзья пользователю {} один из них не найден", friendId, id);
+            throw new NotFoundException("Пользователь с таким id не найден");
+        }
+        friendsGraph.add(id, friendId);
+        return true;
     }
 
     @Override
@@ -128,26 +183,96 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
-    public List<User> getCommonFriends(long id, long otherId) {
-        String queryFindFriendsById = "SELECT f.followed_user_id FROM friends AS f " +
-                "JOIN users AS u ON f.following_user_id = u.user_id " +
-                "WHERE u.user_id = ?;";
-        List<Long> friendsById = jdbcTemplate.queryForList(queryFindFriendsById, Long.class, id);
-        List<Long> friendsByOtherId = jdbcTemplate.queryForList(queryFindFriendsById, Long.class, otherId);
-        friendsById.retainAll(friendsByOtherId);
+    public Map<Long, List<Long>> getUsersFriendsIds(long fromId, long toId) {
+        String getFriendsQuery = "SELECT * FROM friends " +
+                "WHERE following_user_id > ? AND following_user_id <= ? ;";
+
+        return jdbcTemplate.query(getFriendsQuery, (ResultSet rs) -> {
+            HashMap<Long, List<Long>> results = new HashMap<>();
+            while (rs.next()) {
+                results.computeIfAbsent(rs.getLong("following_user_id"), id -> new ArrayList<>())
+                        .add(rs.getLong("followed_user_id"));
+            }
+            return results;
+        }, fromId, toId);
+    }
 
-        String inSql = String.join(",", Collections.nCopies(friendsById.size(), "?"));
-        String queryGetFriends = String.format("SELECT * FROM users " +
-                "WHERE user_id IN (%s)", inSql);
+    @Override
+    public Map<Long, List<Long>> getUsersFriendsIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new HashMap<>();
+        }
+        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String getFriendsQuery = String.format("SELECT * FROM friends " +
+                "WHERE following_user_id IN (%s) " +
+                "ORDER BY following_user_id, followed_user_id;", inSql);
 
-        return jdbcTemplate.query(queryGetFriends, this::mapRowToUser, friendsById.toArray());
+        return jdbcTemplate.query(getFriendsQuery, (ResultSet rs) -> {
+            HashMap<Long, List<Long>> results = new HashMap<>();
+            while (rs.next()) {
+                results.computeIfAbsent(rs.getLong("following_user_id"), id -> new ArrayList<>())
+                        .add(rs.getLong("followed_user_id"));
+            }
+            return results;
+        }, ids.toArray());
     }
 
     @Override
-    public void deleteFromFriends(long id, long friendId) {
+    public List<User> getCommonFriends(long id, long otherId) {
+        String queryGetCommonFriends = "SELECT u.* FROM friends AS f1 " +
+                "JOIN friends AS f2 ON f1.followed_user_id = f2.followed_user_id " +
+                "JOIN users AS u ON u.user_id = f1.followed_user_id " +
+                "WHERE f1.following_user_id = ? AND f2.following_user_id = ? " +
+                "ORDER BY u.user_id;";
+
+        return jdbcTemplate.query(queryGetCommonFriends, this::mapRowToUser, id, otherId);
+    }
+
+    @Override
+    public boolean deleteFromFriends(long id, long friendId) {
         String deleteFriendQuery = "DELETE FROM friends " +
                 "WHERE following_user_id = ? AND followed_user_id = ?;";
-        jdbcTemplate.update(deleteFriendQuery, id, friendId);
+        if (jdbcTemplate.update(deleteFriendQuery, id, friendId) == 0) {
+            return false;
+        }
+        friendsGraph.remove(id, friendId);
+        return true;
+    }
+
+    @Override
+    public List<User> getSuggestedFriends(long id, int count) {
+        return getUsers(FriendSuggestions.suggest(friendsGraph, id, count));
+    }
+
+    private void loadFriendsGraph() {
+        friendsGraph.clear();
+        jdbcTemplate.query("SELECT following_user_id, followed_user_id FROM friends " +
+                "ORDER BY following_user_id, followed_user_id;", (ResultSet rs) -> {
+            long currentId = 0;
+            List<Long> currentFriends = new ArrayList<>();
+            while (rs.next()) {
+                long userId = rs.getLong("following_user_id");
+                if (userId != currentId && !currentFriends.isEmpty()) {
+                    friendsGraph.put(currentId, toArray(currentFriends));
+                    currentFriends.clear();
+                }
+                currentId = userId;
+                currentFriends.add(rs.getLong("followed_user_id"));
+            }
+            if (!currentFriends.isEmpty()) {
+                friendsGraph.put(currentId, toArray(currentFriends));
+            }
+            return null;
+        });
+        log.info("Загружен граф друзей: {} пользователей", friendsGraph.nodes().size());
+    }
+
+    private long[] toArray(List<Long> ids) {
+        long[] array = new long[ids.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ids.get(i);
+        }
+        return array;
     }
 
     private User mapRowToUser(ResultSet resultSet, int rowNum) throws SQLException {
@@ -160,14 +285,8 @@ public class UserDbStorage implements UserStorage {
                 .build();
     }
 
-    @Override
-    public boolean friendIsAdded(long id, long friendId) {
-        String ifRelationAlreadyExistsQuery = "SELECT COUNT(*) FROM friends " +
-                "WHERE following_user_id = ? AND followed_user_id = ? ;";
-        Integer count = jdbcTemplate.queryForObject(ifRelationAlreadyExistsQuery,
-                Integer.class,
-                id, friendId);
-
-        return count > 0;
+    private RuntimeException emailTaken(User user) {
+        log.warn("У пользователя {} указан email, использованный в другом профиле", user.getLogin());
+        return new RuntimeException("Данный email уже используется другим пользователем");
     }
 }
\ No newline at end of file
@@ -9,15 +9,17 @@ public interface UserStorage {
 
     User createNewUser(User user);
 
-    boolean isEmailTaken(User user);
-
     void updateUser(User user);
 
     List<User> getUsers();
 
+    List<User> getUsers(long after, int limit);
+
+    List<User> getUsers(List<Long> ids);
+
     User getUser(long id);
 
-    void addNewFriend(long id, long friendId);
+    boolean addNewFriend(long id, long friendId);
 
     List<User> getUserFriends(long id);
 
@@ -25,13 +27,15 @@ public interface UserStorage {
 
     Map<Long, List<Long>> getUsersFriendsIds();
 
+    Map<Long, List<Long>> getUsersFriendsIds(long fromId, long toId);
+
+    Map<Long, List<Long>> getUsersFriendsIds(List<Long> ids);
+
     List<User> getCommonFriends(long id, long otherId);
 
-    void deleteFromFriends(long id, long friendId);
+    List<User> getSuggestedFriends(long id, int count);
 
-    boolean friendIsAdded(long id, long friendId);
+    boolean deleteFromFriends(long id, long friendId);
 
     boolean contains(long id);
-
-    long getNextId();
 }
@@ -1,4 +1,4 @@
-DROP TABLE IF EXISTS users, films, friends, likes, genres, film_genres, mpa ;
+DROP TABLE IF EXISTS film_like_counters, users, films, friends, likes, genres, film_genres, mpa ;
 
 CREATE TABLE IF NOT EXISTS users (
   user_id bigint GENERATED BY DEFAULT AS IDENTITY NOT NULL PRIMARY KEY,
@@ -35,6 +35,13 @@ CREATE TABLE IF NOT EXISTS likes (
   PRIMARY KEY (film_id, user_id)
 );
 
+CREATE TABLE IF NOT EXISTS film_like_counters (
+  film_id bigint REFERENCES films(film_id),
+  stripe integer NOT NULL,
+  like_count bigint NOT NULL DEFAULT 0,
+  PRIMARY KEY (film_id, stripe)
+);
+
 CREATE TABLE IF NOT EXISTS genres (
   genre_id integer GENERATED BY DEFAULT AS IDENTITY NOT NULL PRIMARY KEY,
   genre_name varchar(30) NOT NULL
@@ -47,3 +54,10 @@ CREATE TABLE IF NOT EXISTS film_genres (
   PRIMARY KEY (film_id, genre_id)
 );
 
+CREATE INDEX IF NOT EXISTS likes_user_film ON likes (user_id, film_id);
+
+CREATE INDEX IF NOT EXISTS friends_followed_following ON friends (followed_user_id, following_user_id);
+
+CREATE INDEX IF NOT EXISTS film_genres_genre_film ON film_genres (genre_id, film_id);
+
+DROP INDEX IF EXISTS film_like_counters_film_count;
@@ -1,44 +1,79 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.InvalidRequestException;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmImportResult;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmImportService;
+import ru.yandex.practicum.filmorate.service.FilmCache;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.LikeQueue;
 import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.UserCache;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.GenreStorage;
 import ru.yandex.practicum.filmorate.storage.MpaStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @JdbcTest
 @AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class DbFilmsIntegrationTests {
     private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
     private UserService userService;
     private FilmService filmService;
+    private long film1Id;
+    private long film2Id;
+    private long user1Id;
+    private long user2Id;
+    private long user3Id;
 
     @BeforeEach
     public void setUp() {
-        this.userService = new UserService(new UserDbStorage(jdbcTemplate));
+        this.userService = new UserService(new UserDbStorage(jdbcTemplate), new UserCache(new SimpleMeterRegistry(), 10_000));
         this.filmService = new FilmService(new FilmDbStorage(jdbcTemplate),
-                new UserService(new UserDbStorage(jdbcTemplate)),
+                new UserService(new UserDbStorage(jdbcTemplate), new UserCache(new SimpleMeterRegistry(), 10_000)),
                 new GenreService(new GenreStorage(jdbcTemplate)),
-                new MpaService(new MpaStorage(jdbcTemplate)));
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
 
         Film film1 = Film.builder()
                 .name("aaa")
@@ -46,7 +81,7 @@ public class DbFilmsIntegrationTests {
                 .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
                 .duration(120)
                 .build();
-        filmService.addNewFilm(film1);
+        film1Id = filmService.addNewFilm(film1).getId();
 
         Film film2 = Film.builder()
                 .name("aa")
@@ -54,7 +89,13 @@ public class DbFilmsIntegrationTests {
                 .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
                 .duration(120)
                 .build();
-        filmService.addNewFilm(film2);
+        film2Id = filmService.addNewFilm(film2).getId();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "likes", "film_like_counters", "film_genres", "films", "friends", "users");
     }
 
     @Test
@@ -65,24 +106,124 @@ public class DbFilmsIntegrationTests {
                 .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
                 .duration(120)
                 .build();
-        filmService.addNewFilm(film);
+        long filmId = filmService.addNewFilm(film).getId();
 
-        assertEquals(filmService.getFilm(3), film,
+        assertEquals(filmService.getFilm(filmId), film,
                 "Фильм не был добавлен в БД");
     }
 
+    @Test
+    public void testAddNewFilms() {
+        Film valid = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .mpa(Mpa.builder().id(1).build())
+                .build();
+        valid.getGenres().add(Genre.builder().id(4).build());
+        Film blank = valid.toBuilder().name(" ").build();
+        Film unknownGenre = valid.toBuilder().build();
+        unknownGenre.getGenres().add(Genre.builder().id(100).build());
+        Film longName = valid.toBuilder().name("a".repeat(51)).build();
+        Film nullGenre = valid.toBuilder().build();
+        nullGenre.getGenres().add(null);
+
+        List<FilmImportResult> results = createImportService()
+                .addNewFilms(Arrays.asList(valid, blank, unknownGenre, longName, null, nullGenre));
+
+        assertEquals(6, results.size(), "Результат импорта должен содержать запись для каждого фильма");
+        assertNull(results.get(0).getError(), "Корректный фильм не был импортирован");
+        assertNotNull(results.get(1).getError(), "Фильм без названия не должен импортироваться");
+        assertNotNull(results.get(2).getError(), "Фильм с несуществующим жанром не должен импортироваться");
+        assertNotNull(results.get(3).getError(), "Фильм со слишком длинным названием не должен импортироваться");
+        assertNotNull(results.get(4).getError(), "Пустой элемент не должен прерывать импорт");
+        assertNotNull(results.get(5).getError(), "Фильм с пустым жанром не должен импортироваться");
+
+        Film imported = filmService.getFilm(results.get(0).getId());
+        assertEquals("G", imported.getMpa().getName(), "Рейтинг MPA не был сохранён при импорте");
+        assertEquals(4, imported.getGenres().getFirst().getId(), "Жанры не были сохранены при импорте");
+    }
+
+    @Test
+    public void testAddNewFilmsStorageFailure() {
+        FilmImportService importService = new FilmImportService(new InMemoryFilmStorage(new InMemoryUserStorage()) {
+            @Override
+            public List<Film> addNewFilms(List<Film> films) {
+                throw new DataIntegrityViolationException("value too long");
+            }
+        },
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper().findAndRegisterModules());
+        Film film = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .build();
+
+        List<FilmImportResult> results = importService.addNewFilms(List.of(film, film.toBuilder().name(" ").build()));
+
+        assertEquals(2, results.size(), "Ошибка сохранения не должна прерывать импорт");
+        assertNull(results.get(0).getId(), "Фильм, который не удалось сохранить, не должен получить id");
+        assertTrue(results.get(0).getError().contains("value too long"),
+                "Ошибка сохранения должна попасть в результат импорта");
+    }
+
+    @Test
+    public void testAddNewFilmsFromNdjson() throws IOException {
+        String ndjson = """
+                {"name":"a","description":"b","releaseDate":"2000-08-02","duration":120}
+                {"name":
+                null
+                {"name":"c","description":"d","releaseDate":"2000-08-02","duration":120,"genres":[{"id":1}]}
+                """;
+
+        List<FilmImportResult> results = createImportService()
+                .addNewFilms(new BufferedReader(new StringReader(ndjson)));
+
+        assertEquals(4, results.size(), "Результат импорта должен содержать запись для каждой строки");
+        assertNotNull(results.get(1).getError(), "Некорректная строка не должна импортироваться");
+        assertNotNull(results.get(2).getError(), "Строка null не должна импортироваться");
+        assertEquals(3, results.get(3).getIndex(), "Номер строки в результате импорта не совпадает с входными данными");
+        assertEquals("c", filmService.getFilm(results.get(3).getId()).getName(),
+                "Фильм из строки после некорректной не был импортирован");
+    }
+
     @Test
     public void testUpdateFilm() {
-        Film film = filmService.getFilm(1);
+        Film film = filmService.getFilm(film1Id);
         film.setName("TEST");
         filmService.updateFilm(film);
-        assertEquals("TEST", filmService.getFilm(1).getName(),
+        assertEquals("TEST", filmService.getFilm(film1Id).getName(),
                 "Название фильма в базе данных не было изменено или изменено неадекватно запросу");
     }
 
+    @Test
+    public void testUpdateFilmGenresAndMpa() {
+        Film film = filmService.getFilm(film1Id);
+        film.getGenres().add(Genre.builder().id(1).build());
+        film.getGenres().add(Genre.builder().id(2).build());
+        filmService.updateFilm(film);
+
+        film = filmService.getFilm(film1Id);
+        film.getGenres().removeFirst();
+        film.getGenres().add(Genre.builder().id(3).build());
+        film.setMpa(Mpa.builder().id(4).build());
+        filmService.updateFilm(film);
+
+        Film updated = filmService.getFilm(film1Id);
+        assertEquals(List.of(2, 3), updated.getGenres().stream().map(Genre::getId).toList(),
+                "Жанры фильма не были обновлены");
+        assertEquals("R", updated.getMpa().getName(), "Рейтинг MPA фильма не был обновлён");
+        assertEquals(updated, film, "Ответ на обновление не совпадает с сохранённым фильмом");
+    }
+
     @Test
     public void testGetFilmById() {
-        Film film = filmService.getFilm(1);
+        Film film = filmService.getFilm(film1Id);
         assertEquals("aaa", film.getName(),
                 "Метод вернул название фильма, не соответствующее фильму, переданному по id");
     }
@@ -94,23 +235,96 @@ public class DbFilmsIntegrationTests {
                 "Размер таблицы в базе данных не соответствует реальному числу фильмов");
     }
 
+    @Test
+    public void testGetFilmsPage() {
+        Film film = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .build();
+        filmService.addNewFilm(film);
+
+        List<Film> page = filmService.getFilms(film1Id, 1);
+        assertEquals(1, page.size(), "Размер страницы не соответствует параметру limit");
+        assertEquals(film2Id, page.getFirst().getId(), "Страница должна начинаться с фильма, следующего за after");
+        assertEquals(1, filmService.getFilms(film2Id, 10).size(),
+                "Последняя страница содержит неверное число фильмов");
+    }
+
+    @Test
+    public void testGetFilmsWithDetails() {
+        createUsers();
+        Film film = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .mpa(Mpa.builder().id(3).build())
+                .build();
+        film.getGenres().add(Genre.builder().id(2).build());
+        film.getGenres().add(Genre.builder().id(1).build());
+        long filmId = filmService.addNewFilm(film).getId();
+        filmService.like(filmId, user1Id);
+        filmService.like(filmId, user2Id);
+
+        List<Film> films = filmService.getFilms();
+        assertEquals(filmService.getFilm(filmId), films.getLast(),
+                "Фильм из общего списка не совпадает с фильмом, полученным по id");
+        assertEquals("PG-13", films.getLast().getMpa().getName(),
+                "В общем списке фильмов не заполнено наименование рейтинга MPA");
+        assertEquals(List.of(user1Id, user2Id), films.getLast().getUsersLiked(),
+                "В общем списке фильмов не заполнены лайки");
+    }
+
     @Test
     public void testLike() {
         createUsers();
-        filmService.like(1, 1);
-        assertTrue(filmService.getFilm(1).getUsersLiked().contains(1L),
+        filmService.like(film1Id, user1Id);
+        assertTrue(filmService.getFilm(film1Id).getUsersLiked().contains(user1Id),
                 "Лайк не был поставлен фильму");
     }
 
+    @Test
+    public void testLikeIsIdempotentAndChecksIds() {
+        createUsers();
+        filmService.like(film1Id, user1Id);
+        assertEquals(List.of(user1Id), filmService.like(film1Id, user1Id).getUsersLiked().stream().toList(),
+                "Повторный лайк не должен дублироваться");
+        assertEquals(1, filmService.topByLikes(1).getFirst().getUsersLiked().size(),
+                "Повторный лайк не должен увеличивать рейтинг");
+
+        assertThrows(NotFoundException.class, () -> filmService.like(film1Id, user3Id + 100),
+                "Лайк несуществующего пользователя должен приводить к ошибке поиска");
+        assertThrows(NotFoundException.class, () -> filmService.like(film2Id + 100, user1Id),
+                "Лайк несуществующему фильму должен приводить к ошибке поиска");
+        assertThrows(NotFoundException.class, () -> filmService.dislike(film1Id, user3Id + 100),
+                "Удаление лайка несуществующего пользователя должно приводить к ошибке поиска");
+    }
+
     @Test
     public void testDislike() {
         createUsers();
-        filmService.like(1, 1);
-        filmService.dislike(1, 1);
-        assertFalse(filmService.getFilm(1).getUsersLiked().contains(1L),
+        filmService.like(film1Id, user1Id);
+        filmService.dislike(film1Id, user1Id);
+        assertFalse(filmService.getFilm(film1Id).getUsersLiked().contains(user1Id),
                 "Лайк не был снят");
     }
 
+    @Test
+    public void testLikeCountersFollowLikes() {
+        createUsers();
+        filmService.like(film1Id, user1Id);
+        filmService.like(film1Id, user2Id);
+        filmService.like(film1Id, user3Id);
+        filmService.dislike(film1Id, user2Id);
+        filmService.dislike(film1Id, user2Id);
+
+        String query = "SELECT SUM(like_count) FROM film_like_counters WHERE film_id = ? ;";
+        assertEquals(2, jdbcTemplate.queryForObject(query, Long.class, film1Id),
+                "Счётчик лайков разошёлся с таблицей лайков");
+    }
+
     @Test
     public void testGetTopByLikes() {
         createUsers();
@@ -120,22 +334,324 @@ public class DbFilmsIntegrationTests {
                 .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
                 .duration(120)
                 .build();
-        filmService.addNewFilm(film);
+        long film3Id = filmService.addNewFilm(film).getId();
 
-        filmService.like(1, 1);
-        filmService.like(1, 2);
-        filmService.like(1, 3);
-        filmService.like(1, 2);
-        filmService.like(3, 1);
-        filmService.like(3, 2);
-        filmService.like(2, 1);
+        filmService.like(film1Id, user1Id);
+        filmService.like(film1Id, user2Id);
+        filmService.like(film1Id, user3Id);
+        filmService.like(film1Id, user2Id);
+        filmService.like(film3Id, user1Id);
+        filmService.like(film3Id, user2Id);
+        filmService.like(film2Id, user1Id);
 
         assertEquals(2, filmService.topByLikes(2).size(),
                 "Ограничение на количество выводимых фильмов за раз не вернуло ожидаемый результат");
-        assertEquals(filmService.getFilm(1), filmService.topByLikes(3).getFirst(),
+        assertEquals(filmService.getFilm(film1Id), filmService.topByLikes(3).getFirst(),
                 "Запрос к базе не смог определить самый популярный фильм");
-        assertEquals(filmService.getFilm(2), filmService.topByLikes(3).getLast(),
+        assertEquals(filmService.getFilm(film2Id), filmService.topByLikes(3).getLast(),
                 "Запрос к базе не смог определить самый непопулярный фильм");
+        assertEquals(List.of(filmService.getFilm(film1Id), filmService.getFilm(film3Id)), filmService.topByLikes(2),
+                "Ограниченный топ должен содержать самые популярные фильмы");
+    }
+
+    @Test
+    public void testGetRecommendations() {
+        createUsers();
+        Film film = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .build();
+        long film3Id = filmService.addNewFilm(film).getId();
+
+        filmService.like(film1Id, user1Id);
+        filmService.like(film2Id, user1Id);
+        filmService.like(film1Id, user2Id);
+        filmService.like(film2Id, user2Id);
+        filmService.like(film3Id, user2Id);
+        filmService.like(film1Id, user3Id);
+
+        assertEquals(List.of(filmService.getFilm(film3Id)), filmService.getRecommendations(user1Id, 10),
+                "Рекомендации должны содержать фильмы похожих пользователей, которые ещё не понравились пользователю");
+
+        FilmService restarted = new FilmService(new FilmDbStorage(jdbcTemplate),
+                userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
+        assertEquals(List.of(film2Id, film3Id), restarted.getRecommendations(user3Id, 10).stream()
+                        .map(Film::getId)
+                        .toList(),
+                "Рекомендации должны восстанавливаться из таблицы лайков и учитывать степень сходства");
+
+        filmService.dislike(film3Id, user2Id);
+        assertEquals(0, filmService.getRecommendations(user1Id, 10).size(),
+                "Рекомендации не учли удалённый лайк");
+        assertThrows(InvalidRequestException.class, () -> filmService.getRecommendations(user1Id, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testTopByLikesIsRestoredFromLikes() {
+        createUsers();
+        filmService.like(film2Id, user1Id);
+        filmService.like(film2Id, user2Id);
+        filmService.like(film1Id, user3Id);
+
+        FilmService restarted = new FilmService(new FilmDbStorage(jdbcTemplate),
+                userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
+        List<Film> top = restarted.topByLikes(10);
+        assertEquals(film2Id, top.getFirst().getId(),
+                "Рейтинг фильмов не был восстановлен по таблице лайков");
+        assertEquals(List.of(user1Id, user2Id), top.getFirst().getUsersLiked(),
+                "У фильмов из рейтинга не заполнены лайки");
+    }
+
+    @Test
+    public void testTopByLikesFilteredByGenreAndYear() {
+        createUsers();
+        Film film = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(1999, Month.AUGUST, 2))
+                .duration(120)
+                .build();
+        film.getGenres().add(Genre.builder().id(1).build());
+        long film3Id = filmService.addNewFilm(film).getId();
+        Film film2 = filmService.getFilm(film2Id);
+        film2.getGenres().add(Genre.builder().id(1).build());
+        filmService.updateFilm(film2);
+
+        filmService.like(film1Id, user1Id);
+        filmService.like(film1Id, user2Id);
+        filmService.like(film3Id, user1Id);
+        filmService.like(film3Id, user2Id);
+        filmService.like(film3Id, user3Id);
+
+        assertEquals(List.of(film3Id, film2Id), ids(filmService.topByLikes(10, 1, null)),
+                "Топ по жанру должен содержать только фильмы этого жанра");
+        assertEquals(List.of(film1Id, film2Id), ids(filmService.topByLikes(10, null, 2000)),
+                "Топ по году должен содержать только фильмы этого года");
+        assertEquals(List.of(film2Id), ids(filmService.topByLikes(10, 1, 2000)),
+                "Топ по жанру и году должен учитывать оба фильтра");
+        assertEquals(0, filmService.topByLikes(10, 2, null).size(),
+                "Топ по жанру без фильмов должен быть пустым");
+        assertThrows(NotFoundException.class, () -> filmService.topByLikes(10, 100, null));
+        assertThrows(InvalidRequestException.class, () -> filmService.topByLikes(Integer.MAX_VALUE, null, null));
+
+        film2.getGenres().clear();
+        film2.setReleaseDate(LocalDate.of(1999, Month.AUGUST, 2));
+        filmService.updateFilm(film2);
+        filmService.like(film2Id, user1Id);
+        assertEquals(List.of(film3Id, film2Id), ids(filmService.topByLikes(10, null, 1999)),
+                "Топ по году не учёл изменение даты выхода фильма");
+        assertEquals(List.of(film3Id), ids(filmService.topByLikes(10, 1, null)),
+                "Топ по жанру не учёл изменение жанров фильма");
+
+        FilmService restarted = new FilmService(new FilmDbStorage(jdbcTemplate),
+                userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
+        assertEquals(List.of(film3Id), ids(restarted.topByLikes(10, 1, 1999)),
+                "Топ по жанру и году не был восстановлен из базы");
+    }
+
+    @Test
+    public void testSearch() {
+        createUsers();
+        long matrixId = filmService.addNewFilm(Film.builder()
+                .name("Матрица")
+                .description("Хакер узнаёт правду о реальности")
+                .releaseDate(LocalDate.of(1999, Month.MARCH, 31))
+                .duration(136)
+                .build()).getId();
+        long reloadedId = filmService.addNewFilm(Film.builder()
+                .name("Матрица: Перезагрузка")
+                .description("Продолжение истории")
+                .releaseDate(LocalDate.of(2003, Month.MAY, 15))
+                .duration(138)
+                .build()).getId();
+        long hackersId = filmService.addNewFilm(Film.builder()
+                .name("Хакеры")
+                .description("Фильм о хакерах, похожий на Матрицу")
+                .releaseDate(LocalDate.of(1995, Month.SEPTEMBER, 15))
+                .duration(105)
+                .build()).getId();
+        filmService.like(reloadedId, user1Id);
+
+        assertEquals(List.of(reloadedId, matrixId, hackersId),
+                ids(filmService.search("матриц", List.of("title", "description"), 10)),
+                "Совпадения в названии должны быть выше совпадений в описании, а при равенстве — популярные фильмы");
+        assertEquals(List.of(reloadedId, matrixId), ids(filmService.search("Матрица", List.of("title"), 10)),
+                "Поиск только по названию не должен учитывать описание");
+        assertEquals(List.of(matrixId), ids(filmService.search("хакер правду", List.of("description"), 10)),
+                "Результат поиска должен содержать все слова запроса");
+        assertThrows(InvalidRequestException.class, () -> filmService.search(" ", List.of("title"), 10));
+        assertThrows(InvalidRequestException.class, () -> filmService.search("матрица", List.of("genre"), 10));
+        assertThrows(InvalidRequestException.class,
+                () -> filmService.search("матрица", List.of("title"), Integer.MAX_VALUE));
+
+        Film hackers = filmService.getFilm(hackersId);
+        hackers.setDescription("Фильм о подростках-хакерах");
+        filmService.updateFilm(hackers);
+        assertEquals(List.of(reloadedId, matrixId), ids(filmService.search("матрица", List.of("title", "description"), 10)),
+                "Поисковый индекс не учёл изменение описания фильма");
+
+        FilmService restarted = new FilmService(new FilmDbStorage(jdbcTemplate),
+                userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
+        assertEquals(List.of(hackersId), ids(restarted.search("подростках", List.of("description"), 10)),
+                "Поисковый индекс не был восстановлен из базы");
+    }
+
+    @Test
+    public void testInMemoryIndexesFollowCommits() {
+        createUsers();
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        filmStorage.like(film1Id, user2Id);
+        transaction.executeWithoutResult(status -> {
+            filmStorage.like(film2Id, user1Id);
+            filmStorage.like(film2Id, user2Id);
+            assertEquals(film1Id, filmStorage.topByLikes(1, null, null).getFirst().getId(),
+                    "Рейтинг не должен меняться до фиксации транзакции");
+            status.setRollbackOnly();
+        });
+        assertEquals(film1Id, filmStorage.topByLikes(1, null, null).getFirst().getId(),
+                "Рейтинг не должен учитывать отменённый лайк");
+        assertEquals(0, filmStorage.getRecommendations(user1Id, 10).size(),
+                "Рекомендации не должны учитывать отменённый лайк");
+
+        transaction.executeWithoutResult(status -> {
+            filmStorage.like(film2Id, user1Id);
+            filmStorage.like(film2Id, user2Id);
+        });
+        assertEquals(film2Id, filmStorage.topByLikes(1, null, null).getFirst().getId(),
+                "Рейтинг не учёл зафиксированный лайк");
+        assertEquals(List.of(film1Id), ids(filmStorage.getRecommendations(user1Id, 10)),
+                "Рекомендации не учли зафиксированный лайк");
+
+        Film renamed = filmStorage.getFilm(film1Id).toBuilder().name("Солярис").build();
+        Set<FilmSearchIndex.Field> byTitle = Set.of(FilmSearchIndex.Field.TITLE);
+        transaction.executeWithoutResult(status -> {
+            filmStorage.updateFilm(renamed);
+            status.setRollbackOnly();
+        });
+        assertEquals(0, filmStorage.search("солярис", byTitle, 10).size(),
+                "Поиск не должен учитывать отменённое изменение фильма");
+
+        transaction.executeWithoutResult(status -> filmStorage.updateFilm(renamed));
+        assertEquals(List.of(film1Id), ids(filmStorage.search("солярис", byTitle, 10)),
+                "Поиск не учёл зафиксированное изменение фильма");
+    }
+
+    @Test
+    public void testFilmCache() {
+        createUsers();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FilmService cached = new FilmService(new FilmDbStorage(jdbcTemplate),
+                userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(meterRegistry, 10_000));
+
+        cached.like(film1Id, user2Id);
+        Film film = cached.getFilm(film1Id);
+        film.getUsersLiked().add(user3Id);
+        film.getGenres().add(Genre.builder().id(1).build());
+        assertEquals(List.of(user2Id), cached.getFilm(film1Id).getUsersLiked(),
+                "Изменение полученного фильма не должно влиять на кэш");
+        assertEquals(0, cached.getFilm(film1Id).getGenres().size(),
+                "Изменение полученного фильма не должно влиять на кэш");
+
+        cached.like(film1Id, user1Id);
+        cached.like(film1Id, user3Id);
+        cached.dislike(film1Id, user2Id);
+        assertEquals(List.of(user1Id, user3Id), cached.getFilm(film1Id).getUsersLiked(),
+                "Кэш не учёл лайки, поставленные и удалённые после загрузки фильма");
+
+        Film updated = cached.getFilm(film1Id);
+        updated.setName("updated");
+        updated.getGenres().add(Genre.builder().id(2).build());
+        cached.updateFilm(updated);
+        assertEquals(filmService.getFilm(film1Id), cached.getFilm(film1Id),
+                "Кэш не учёл изменение фильма");
+
+        assertTrue(meterRegistry.get("cache.gets").tag("cache", "films").tag("result", "hit")
+                .functionCounter().count() > 0, "Метрики попаданий в кэш не собираются");
+        assertThrows(NotFoundException.class, () -> cached.getFilm(film2Id + 100));
+    }
+
+    @Test
+    public void testLikeWriteBehind() throws InterruptedException {
+        createUsers();
+        FilmDbStorage filmStorage = new FilmDbStorage(jdbcTemplate);
+        LikeQueue likeQueue = new LikeQueue(filmStorage, new SimpleMeterRegistry(), 2, 1000, 3_600_000);
+        likeQueue.start();
+        FilmService queued = createFilmService(filmStorage);
+        queued.setLikeQueue(likeQueue);
+        String countLikes = "SELECT COUNT(*) FROM likes WHERE film_id = ?;";
+
+        assertEquals(List.of(user1Id), queued.like(film1Id, user1Id).getUsersLiked(),
+                "Лайк из очереди должен быть виден поставившему его пользователю");
+        queued.like(film1Id, user1Id);
+        queued.like(film1Id, user2Id);
+        assertEquals(2, likeQueue.size(), "Повторный лайк не должен занимать место в очереди");
+        assertEquals(0, jdbcTemplate.queryForObject(countLikes, Integer.class, film1Id),
+                "Лайки из очереди не должны записываться до сброса");
+
+        queued.like(film1Id, user3Id);
+        assertEquals(1, jdbcTemplate.queryForObject(countLikes, Integer.class, film1Id),
+                "При переполненной очереди лайк должен записываться сразу");
+
+        queued.dislike(film1Id, user2Id);
+        assertEquals(1, likeQueue.size(), "Удалённый лайк должен убираться из очереди");
+        FilmService uncached = createFilmService(filmStorage);
+        uncached.setLikeQueue(likeQueue);
+        assertEquals(List.of(user1Id, user3Id), uncached.getFilm(film1Id).getUsersLiked(),
+                "Фильм, загруженный из БД, должен учитывать лайки из очереди");
+        assertThrows(NotFoundException.class, () -> queued.like(film1Id, user3Id + 100));
+
+        likeQueue.flush();
+        assertEquals(0, likeQueue.size(), "Очередь должна быть пуста после сброса");
+        assertEquals(List.of(user1Id, user3Id), filmStorage.usersLikedFilm(film1Id),
+                "Лайки из очереди не записаны в БД");
+        assertEquals(film1Id, filmStorage.topByLikes(1, null, null).getFirst().getId(),
+                "Рейтинг не учёл лайки из очереди");
+
+        queued.like(film2Id, user2Id);
+        likeQueue.close();
+        assertEquals(List.of(user2Id), filmStorage.usersLikedFilm(film2Id),
+                "Лайки из очереди должны записываться при остановке");
+    }
+
+    private List<Long> ids(List<Film> films) {
+        return films.stream()
+                .map(Film::getId)
+                .toList();
+    }
+
+    private FilmService createFilmService(FilmDbStorage filmStorage) {
+        return new FilmService(filmStorage,
+                userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
+    }
+
+    private FilmImportService createImportService() {
+        return new FilmImportService(new FilmDbStorage(jdbcTemplate),
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                new ObjectMapper().findAndRegisterModules());
     }
 
     private void createUsers() {
@@ -145,7 +661,7 @@ public class DbFilmsIntegrationTests {
                 .email("hello@world.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user1);
+        user1Id = userService.createNewUser(user1).getId();
 
         User user2 = User.builder()
                 .login("ljiloo")
@@ -153,7 +669,7 @@ public class DbFilmsIntegrationTests {
                 .email("he@wo.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user2);
+        user2Id = userService.createNewUser(user2).getId();
 
         User user3 = User.builder()
                 .login("jijiloo")
@@ -161,6 +677,6 @@ public class DbFilmsIntegrationTests {
                 .email("hehe@wow.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user3);
+        user3Id = userService.createNewUser(user3).getId();
     }
 }
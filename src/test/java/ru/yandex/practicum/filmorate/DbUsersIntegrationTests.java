@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,15 +8,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exceptions.InvalidRequestException;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserCache;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @JdbcTest
 @AutoConfigureTestDatabase
@@ -23,17 +30,19 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 public class DbUsersIntegrationTests {
     private final JdbcTemplate jdbcTemplate;
     private UserService userService;
+    private long user1Id;
+    private long user2Id;
 
     @BeforeEach
     public void setUp() {
-        this.userService = new UserService(new UserDbStorage(jdbcTemplate));
+        this.userService = new UserService(new UserDbStorage(jdbcTemplate), new UserCache(new SimpleMeterRegistry(), 10_000));
         User user1 = User.builder()
                 .login("jiloo")
                 .name("puk")
                 .email("hello@world.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user1);
+        user1Id = userService.createNewUser(user1).getId();
 
         User user2 = User.builder()
                 .login("ljiloo")
@@ -41,7 +50,7 @@ public class DbUsersIntegrationTests {
                 .email("he@wo.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user2);
+        user2Id = userService.createNewUser(user2).getId();
     }
 
     @Test
@@ -52,14 +61,14 @@ public class DbUsersIntegrationTests {
                 .email("hehe@wow.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user);
-        assertEquals(userService.getUser(3), user,
+        long userId = userService.createNewUser(user).getId();
+        assertEquals(userService.getUser(userId), user,
                 "Пользователь не был добавлен в БД");
     }
 
     @Test
     public void testGetUserById() {
-        assertEquals("puk", userService.getUser(1).getName(),
+        assertEquals("puk", userService.getUser(user1Id).getName(),
                 "Метод вернул имя пользователя, не соответствующее пользователю, переданному по id");
     }
 
@@ -70,32 +79,42 @@ public class DbUsersIntegrationTests {
                 "Размер таблицы в базе данных не соответствует реальному числу пользователей");
     }
 
+    @Test
+    public void testGetUsersPage() {
+        userService.addNewFriend(user2Id, user1Id);
+
+        List<User> page = userService.getUsers(user1Id, 10);
+        assertEquals(1, page.size(), "Страница должна содержать пользователей с id больше after");
+        assertEquals(userService.getUser(user2Id), page.getFirst(),
+                "Пользователь из страницы не совпадает с пользователем, полученным по id");
+    }
+
     @Test
     public void testUpdateUser() {
-        User user = userService.getUser(1);
+        User user = userService.getUser(user1Id);
         user.setLogin("TEST");
         userService.updateUser(user);
-        assertEquals("TEST", userService.getUser(1).getLogin(),
+        assertEquals("TEST", userService.getUser(user1Id).getLogin(),
                 "Логин пользователя в базе данных не был изменён или изменён неадекватно запросу");
     }
 
     @Test
     public void testFollowUser() {
-        userService.addNewFriend(1, 2);
+        userService.addNewFriend(user1Id, user2Id);
 
         String query = "SELECT followed_user_id FROM friends WHERE following_user_id = ? ;";
-        assertEquals(2, jdbcTemplate.queryForObject(query, Long.class, 1),
-                String.format("Пользователь %d не смог добавить пользователя %d в друзья", 1, 2));
+        assertEquals(user2Id, jdbcTemplate.queryForObject(query, Long.class, user1Id),
+                String.format("Пользователь %d не смог добавить пользователя %d в друзья", user1Id, user2Id));
     }
 
     @Test
     public void testAddFriend() {
-        userService.addNewFriend(1, 2);
-        userService.addNewFriend(2, 1);
+        userService.addNewFriend(user1Id, user2Id);
+        userService.addNewFriend(user2Id, user1Id);
 
         String query = "SELECT COUNT(*) FROM friends WHERE followed_user_id IN (?, ?) AND following_user_id IN (?, ?) ;";
-        assertEquals(2, jdbcTemplate.queryForObject(query, Integer.class, 2, 1, 2, 1),
-                String.format("Дружбе между %d и %d не был присвоен взаимный статус, хотя заявка была принята", 1, 2));
+        assertEquals(2, jdbcTemplate.queryForObject(query, Integer.class, user2Id, user1Id, user2Id, user1Id),
+                String.format("Дружбе между %d и %d не был присвоен взаимный статус, хотя заявка была принята", user1Id, user2Id));
     }
 
     @Test
@@ -106,13 +125,13 @@ public class DbUsersIntegrationTests {
                 .email("hehe@wow.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user);
-        userService.addNewFriend(1, 2);
-        userService.addNewFriend(2, 1);
-        userService.addNewFriend(1, 3);
-        userService.addNewFriend(3, 1);
+        long user3Id = userService.createNewUser(user).getId();
+        userService.addNewFriend(user1Id, user2Id);
+        userService.addNewFriend(user2Id, user1Id);
+        userService.addNewFriend(user1Id, user3Id);
+        userService.addNewFriend(user3Id, user1Id);
 
-        assertEquals(2, userService.getUserFriends(1).size(),
+        assertEquals(2, userService.getUserFriends(user1Id).size(),
                 "В список друзей попали не все добавленные и принявшие заявку пользователи");
     }
 
@@ -124,30 +143,148 @@ public class DbUsersIntegrationTests {
                 .email("hehe@wow.com")
                 .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
                 .build();
-        userService.createNewUser(user);
-        userService.addNewFriend(1, 2);
-        userService.addNewFriend(2, 1);
-        userService.addNewFriend(3, 2);
-        userService.addNewFriend(2, 3);
+        long user3Id = userService.createNewUser(user).getId();
+        userService.addNewFriend(user1Id, user2Id);
+        userService.addNewFriend(user2Id, user1Id);
+        userService.addNewFriend(user3Id, user2Id);
+        userService.addNewFriend(user2Id, user3Id);
 
-        List<User> commonFriends = userService.getCommonFriends(1, 3);
+        List<User> commonFriends = userService.getCommonFriends(user1Id, user3Id);
         assertEquals(1, commonFriends.size(),
                 "В списке общих друзей более одного пользователя");
 
         User commonFriend = commonFriends.getFirst();
-        assertEquals(2, commonFriend.getId(),
+        assertEquals(user2Id, commonFriend.getId(),
                 String.format("В список общих друзей попал пользователь с неверным id: %d", commonFriend.getId()));
     }
 
+    @Test
+    public void getCommonFriendsWithFriendsIds() {
+        User user = User.builder()
+                .login("jijiloo")
+                .name("hehe")
+                .email("hehe@wow.com")
+                .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
+                .build();
+        long user3Id = userService.createNewUser(user).getId();
+        assertEquals(0, userService.getCommonFriends(user1Id, user2Id).size(),
+                "У пользователей без друзей не может быть общих друзей");
+
+        userService.addNewFriend(user1Id, user3Id);
+        userService.addNewFriend(user2Id, user3Id);
+        userService.addNewFriend(user3Id, user1Id);
+
+        List<User> commonFriends = userService.getCommonFriends(user1Id, user2Id);
+        assertEquals(1, commonFriends.size(), "В списке общих друзей должен быть один пользователь");
+        assertEquals(userService.getUser(user3Id), commonFriends.getFirst(),
+                "Общий друг не совпадает с пользователем, полученным по id");
+    }
+
+    @Test
+    public void getSuggestedFriends() {
+        long[] ids = new long[5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = userService.createNewUser(User.builder()
+                    .login("friend" + i)
+                    .email("friend" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
+                    .build()).getId();
+        }
+        userService.addNewFriend(user1Id, ids[0]);
+        userService.addNewFriend(user1Id, ids[1]);
+        userService.addNewFriend(ids[0], ids[2]);
+        userService.addNewFriend(ids[1], ids[2]);
+        userService.addNewFriend(ids[1], ids[3]);
+        userService.addNewFriend(ids[0], ids[1]);
+        userService.addNewFriend(ids[0], user1Id);
+
+        List<Long> suggested = userService.getSuggestedFriends(user1Id, 10).stream()
+                .map(User::getId)
+                .toList();
+        assertEquals(List.of(ids[2], ids[3]), suggested,
+                "Рекомендации должны быть упорядочены по числу общих друзей без уже добавленных пользователей");
+
+        userService.deleteFromFriends(ids[1], ids[2]);
+        userService.addNewFriend(ids[0], ids[3]);
+        assertEquals(ids[3], userService.getSuggestedFriends(user1Id, 1).getFirst().getId(),
+                "Рекомендации не учли изменение списка друзей");
+        assertThrows(InvalidRequestException.class, () -> userService.getSuggestedFriends(user1Id, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testMissingUsersAndDuplicates() {
+        User duplicate = User.builder()
+                .login("copy")
+                .email("hello@world.com")
+                .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
+                .build();
+        assertThrows(RuntimeException.class, () -> userService.createNewUser(duplicate),
+                "Пользователь с занятым email не должен создаваться");
+
+        long missingId = user2Id + 100;
+        assertThrows(NotFoundException.class, () -> userService.getUser(missingId));
+        assertThrows(NotFoundException.class, () -> userService.addNewFriend(user1Id, missingId));
+        assertThrows(NotFoundException.class, () -> userService.deleteFromFriends(user1Id, missingId));
+        assertThrows(NotFoundException.class, () -> userService.getUserFriends(missingId));
+        assertThrows(NotFoundException.class, () -> userService.getCommonFriends(user1Id, missingId));
+        assertThrows(NotFoundException.class, () -> userService.updateUser(duplicate.toBuilder().id(missingId).build()));
+
+        userService.addNewFriend(user1Id, user2Id);
+        assertEquals(1, userService.addNewFriend(user1Id, user2Id).getFriends().size(),
+                "Повторное добавление в друзья не должно дублировать запись");
+    }
+
     @Test
     public void deleteFriend() {
-        userService.addNewFriend(1, 2);
-        userService.addNewFriend(2, 1);
-        assertEquals(1, userService.getUserFriends(1).size(),
+        userService.addNewFriend(user1Id, user2Id);
+        userService.addNewFriend(user2Id, user1Id);
+        assertEquals(1, userService.getUserFriends(user1Id).size(),
                 "В списке друзей более одного пользователя (был добавлен один)");
 
-        userService.deleteFromFriends(1, 2);
-        assertEquals(0, userService.getUserFriends(1).size(),
+        userService.deleteFromFriends(user1Id, user2Id);
+        assertEquals(0, userService.getUserFriends(user1Id).size(),
                 "Список друзей не пуст (были удалены все друзья)");
     }
+
+    @Test
+    public void testUserCache() {
+        long user3Id = userService.createNewUser(User.builder()
+                .login("jijiloo")
+                .email("hehe@wow.com")
+                .birthday(LocalDate.of(1909, Month.SEPTEMBER, 19))
+                .build()).getId();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UserService cached = new UserService(new UserDbStorage(jdbcTemplate), new UserCache(meterRegistry, 10_000));
+
+        cached.addNewFriend(user1Id, user2Id);
+        User user = cached.getUser(user1Id);
+        user.getFriends().add(user3Id);
+        user.setName("changed");
+        assertEquals(Set.of(user2Id), cached.getUser(user1Id).getFriends(),
+                "Изменение полученного пользователя не должно влиять на кэш");
+        assertEquals("puk", cached.getUser(user1Id).getName(),
+                "Изменение полученного пользователя не должно влиять на кэш");
+
+        cached.addNewFriend(user1Id, user3Id);
+        cached.deleteFromFriends(user1Id, user2Id);
+        assertEquals(userService.getUser(user1Id), cached.getUser(user1Id),
+                "Кэш не учёл друзей, добавленных и удалённых после загрузки пользователя");
+        assertEquals(List.of(user3Id), cached.getUserFriends(user1Id).stream()
+                .map(User::getId)
+                .toList(), "Список друзей не совпадает с закэшированным набором id");
+
+        cached.addNewFriend(user3Id, user2Id);
+        User updated = cached.getUser(user3Id);
+        updated.setName("updated");
+        updated.getFriends().clear();
+        cached.updateUser(updated);
+        assertEquals(userService.getUser(user3Id), cached.getUser(user3Id),
+                "Кэш не учёл изменение пользователя");
+        assertEquals(Set.of(user2Id), cached.getUserFriends(user1Id).getFirst().getFriends(),
+                "Друг из кэша должен содержать актуальный список друзей");
+
+        assertTrue(meterRegistry.get("cache.gets").tag("cache", "users").tag("result", "hit")
+                .functionCounter().count() > 0, "Метрики попаданий в кэш не собираются");
+        assertThrows(NotFoundException.class, () -> cached.getUserFriends(user3Id + 100));
+    }
 }
@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmCache;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.MpaService;
+import ru.yandex.practicum.filmorate.service.UserCache;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FilmHydrationTests {
+    private EmbeddedDatabase database;
+    private UserService userService;
+    private FilmService filmService;
+
+    @BeforeEach
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScripts("schema.sql", "data.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        userService = new UserService(new UserDbStorage(jdbcTemplate), new UserCache(new SimpleMeterRegistry(), 10_000));
+        filmService = new FilmService(new FilmDbStorage(jdbcTemplate), userService,
+                new GenreService(new GenreStorage(jdbcTemplate)),
+                new MpaService(new MpaStorage(jdbcTemplate)),
+                new FilmCache(new SimpleMeterRegistry(), 10_000));
+        filmService.setParallelHydration(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testParallelGetFilm() throws Exception {
+        Film film = Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .mpa(Mpa.builder().id(1).build())
+                .build();
+        film.getGenres().add(Genre.builder().id(2).build());
+        film.getGenres().add(Genre.builder().id(1).build());
+        long filmId = filmService.addNewFilm(film).getId();
+        for (int i = 0; i < 3; i++) {
+            long userId = userService.createNewUser(User.builder()
+                    .login("user" + i)
+                    .email("user" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, 1))
+                    .build()).getId();
+            filmService.like(filmId, userId);
+        }
+
+        Film hydrated = filmService.getFilm(filmId);
+        assertEquals(List.of(1, 2), hydrated.getGenres().stream().map(Genre::getId).toList(),
+                "Жанры фильма не были загружены");
+        assertEquals(3, hydrated.getUsersLiked().size(), "Лайки фильма не были загружены");
+        assertEquals("G", hydrated.getMpa().getName(), "Рейтинг MPA фильма не был загружен");
+        assertThrows(NotFoundException.class, () -> filmService.getFilm(filmId + 1));
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<Film>> films = executor.invokeAll(Collections.nCopies(100,
+                    () -> filmService.getFilm(filmId)));
+            for (Future<Film> result : films) {
+                assertEquals(hydrated, result.get(), "Параллельная загрузка фильма вернула другой результат");
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmPopularity;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class InMemoryStorageConcurrencyTests {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 2000;
+
+    @Test
+    public void testConcurrentUserCreation() throws InterruptedException {
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+
+        runConcurrently(i -> userStorage.createNewUser(User.builder()
+                .login("user" + i)
+                .email("user" + i + "@mail.ru")
+                .birthday(LocalDate.of(1990, Month.JANUARY, 1))
+                .build()));
+
+        List<User> users = userStorage.getUsers();
+        Set<Long> ids = new HashSet<>();
+        users.forEach(user -> ids.add(user.getId()));
+        assertEquals(OPERATIONS, ids.size(), "При параллельном создании пользователей были потеряны записи или id");
+    }
+
+    @Test
+    public void testConcurrentLikes() throws InterruptedException {
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        for (int i = 0; i < 500; i++) {
+            userStorage.createNewUser(User.builder()
+                    .login("user" + i)
+                    .email("user" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, 1))
+                    .build());
+        }
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(userStorage);
+        long filmId = filmStorage.addNewFilm(Film.builder()
+                .name("a")
+                .description("b")
+                .releaseDate(LocalDate.of(2000, Month.AUGUST, 2))
+                .duration(120)
+                .build()).getId();
+
+        runConcurrently(i -> filmStorage.like(filmId, 1 + i % 500));
+
+        assertEquals(500, filmStorage.getFilm(filmId).getUsersLiked().size(),
+                "При параллельных лайках были потеряны или задвоены записи");
+        assertEquals(filmId, filmStorage.topByLikes(1, null, null).getFirst().getId(),
+                "Рейтинг не учёл параллельные лайки");
+        assertThrows(NotFoundException.class, () -> filmStorage.like(filmId, 501),
+                "Лайк от несуществующего пользователя не должен сохраняться");
+    }
+
+    @Test
+    public void testConcurrentLikesAndGenreChanges() throws InterruptedException {
+        FilmPopularity popularity = new FilmPopularity();
+        popularity.put(1, List.of(1), 2000, 0);
+
+        runConcurrently(i -> {
+            if (i % 2 == 0) {
+                popularity.add(1, 1);
+            } else {
+                popularity.move(1, List.of(1 + i % 4), 2000);
+            }
+        });
+
+        assertEquals(OPERATIONS / 2, popularity.likes(1), "Смена жанров фильма затёрла параллельные лайки");
+        assertEquals(List.of(1L), popularity.top(1, null, 2000), "Фильм пропал из рейтинга по году");
+    }
+
+    @Test
+    public void testConcurrentFriendsAcrossBlocks() throws InterruptedException {
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        for (int i = 0; i < OPERATIONS + 2; i++) {
+            userStorage.createNewUser(User.builder()
+                    .login("user" + i)
+                    .email("user" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1990, Month.JANUARY, 1))
+                    .build());
+        }
+        long firstId = OPERATIONS + 1;
+        long secondId = OPERATIONS + 2;
+
+        runConcurrently(i -> {
+            userStorage.addNewFriend(firstId, i + 1);
+            if (i % 2 == 0) {
+                userStorage.addNewFriend(secondId, i + 1);
+            }
+        });
+        runConcurrently(i -> {
+            if (i % 4 == 0) {
+                userStorage.deleteFromFriends(firstId, i + 1);
+            }
+        });
+
+        List<Long> friendsIds = userStorage.getUserFriendsIds(firstId);
+        assertEquals(OPERATIONS - OPERATIONS / 4, friendsIds.size(), "Список друзей потерял или задвоил записи");
+        assertEquals(friendsIds.stream().sorted().toList(), friendsIds, "Список друзей не упорядочен по id");
+        assertEquals(OPERATIONS / 4, userStorage.getCommonFriends(firstId, secondId).size(),
+                "Общие друзья посчитаны неверно");
+    }
+
+    private void runConcurrently(IntConsumer task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int operation = i;
+            executor.submit(() -> task.accept(operation));
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class QueryMetricsTests {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void testQueriesPerRequestAreRecorded() throws Exception {
+        mockMvc.perform(get("/users").param("limit", "10"))
+                .andExpect(status().isOk());
+        DistributionSummary queries = summary();
+        assertNotNull(queries, "Метрика количества SQL-запросов не зарегистрирована");
+        long count = queries.count();
+        double total = queries.totalAmount();
+        assertTrue(total > 0, "Запросы к базе данных не были посчитаны");
+
+        mockMvc.perform(get("/users").param("limit", "10"))
+                .andExpect(status().isOk());
+        assertEquals(count + 1, summary().count(), "Метрика не учла очередной HTTP-запрос");
+        assertTrue(summary().totalAmount() > total, "Запросы к базе данных не были посчитаны");
+    }
+
+    private DistributionSummary summary() {
+        return meterRegistry.find("http.server.requests.queries")
+                .tags("method", "GET", "uri", "/users", "status", "200")
+                .summary();
+    }
+}